@@ -0,0 +1,56 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.3"
+}
+
+repositories {
+    mavenCentral()
+}
+
+// The scan kernels are plain Java; compile them straight from the addon sources, without Minecraft.
+// SnapshotCapture, SnapshotCache and WorldTracker talk to the live client and are the only scan classes left out.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../src/main/java"))
+            include("com/koolname/bigcaves/scan/**")
+            exclude("com/koolname/bigcaves/scan/SnapshotCapture.java", "com/koolname/bigcaves/scan/SnapshotCache.java",
+                "com/koolname/bigcaves/scan/WorldTracker.java")
+        }
+        resources {
+            setSrcDirs(emptyList<String>())
+        }
+    }
+}
+
+dependencies {
+    implementation("it.unimi.dsi:fastutil:${properties["fastutil_version"] as String}")
+}
+
+jmh {
+    jmhVersion = properties["jmh_version"] as String
+    // Allocation rate next to throughput, a new allocation in a hot path shows up as a regression
+    profilers = listOf("gc")
+    benchmarkMode = listOf("thrpt")
+    timeUnit = "s"
+    fork = 1
+    warmupIterations = 3
+    warmup = "2s"
+    iterations = 5
+    timeOnIteration = "2s"
+    resultFormat = "JSON"
+    // Replay a scan-recorder file instead of the synthetic one: -Pjmh.recording=<path>
+    (findProperty("jmh.recording") as String?)?.let {
+        benchmarkParameters.put("recording", objects.listProperty<String>().value(listOf(it)))
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_21
+    targetCompatibility = JavaVersion.VERSION_21
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+    options.release = 21
+}
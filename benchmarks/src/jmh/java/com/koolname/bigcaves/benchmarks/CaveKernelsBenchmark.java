@@ -0,0 +1,74 @@
+package com.koolname.bigcaves.benchmarks;
+
+import com.koolname.bigcaves.scan.AirKernels;
+import com.koolname.bigcaves.scan.FloodFill;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The per-volume checks of a cave scan, each run over every 16x16x16 volume of the world. One operation
+ * is one full pass over the world.
+ */
+@State(Scope.Thread)
+public class CaveKernelsBenchmark {
+    private static final int STEP = 16;
+    private static final int THRESHOLD = 2000;
+    private static final int FLOOD_LIMIT = 20_000;
+
+    @Param({ "STONE", "CHEESE", "ORES" })
+    public SyntheticWorld kind;
+
+    private WorldSnapshot world;
+    private final FloodFill floodFill = new FloodFill();
+
+    @Setup
+    public void setup() {
+        world = kind.build();
+        floodFill.setBounds(0, 0, 0, SyntheticWorld.SIZE_XZ - 1, SyntheticWorld.SIZE_Y - 1, SyntheticWorld.SIZE_XZ - 1);
+    }
+
+    @Benchmark
+    public int countAir() {
+        int air = 0;
+        for (int x = 0; x < SyntheticWorld.SIZE_XZ; x += STEP) {
+            for (int z = 0; z < SyntheticWorld.SIZE_XZ; z += STEP) {
+                for (int y = 0; y < SyntheticWorld.SIZE_Y; y += STEP) {
+                    air += AirKernels.countAir(world, x, y, z, STEP, THRESHOLD);
+                }
+            }
+        }
+        return air;
+    }
+
+    /** Volumes twice as large and off the section grid by half a section, so each one spans 27 sections. */
+    @Benchmark
+    public int countAirUnaligned() {
+        int air = 0;
+        for (int x = STEP / 2; x + 2 * STEP <= SyntheticWorld.SIZE_XZ; x += 2 * STEP) {
+            for (int z = STEP / 2; z + 2 * STEP <= SyntheticWorld.SIZE_XZ; z += 2 * STEP) {
+                for (int y = STEP / 2; y + 2 * STEP <= SyntheticWorld.SIZE_Y; y += 2 * STEP) {
+                    air += AirKernels.countAir(world, x, y, z, 2 * STEP, THRESHOLD);
+                }
+            }
+        }
+        return air;
+    }
+
+    /** A bounded fill from the center of every volume, without sharing visited blocks between fills. */
+    @Benchmark
+    public long countConnectedAir() {
+        long nodes = 0;
+        for (int x = 0; x < SyntheticWorld.SIZE_XZ; x += STEP) {
+            for (int z = 0; z < SyntheticWorld.SIZE_XZ; z += STEP) {
+                for (int y = 0; y < SyntheticWorld.SIZE_Y; y += STEP) {
+                    nodes += floodFill.countConnectedAir(world, x + STEP / 2, y + STEP / 2, z + STEP / 2, FLOOD_LIMIT);
+                }
+            }
+        }
+        return nodes;
+    }
+}
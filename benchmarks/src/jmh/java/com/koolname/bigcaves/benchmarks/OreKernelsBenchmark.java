@@ -0,0 +1,85 @@
+package com.koolname.bigcaves.benchmarks;
+
+import com.koolname.bigcaves.scan.ChunkIndex;
+import com.koolname.bigcaves.scan.OreKernels;
+import com.koolname.bigcaves.scan.PackedPos;
+import com.koolname.bigcaves.scan.SectionSnapshot;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.BitSet;
+
+/**
+ * The block checks of an ore scan. One operation is one pass over the world: every block is tested for
+ * ore and exposure, per block or per section bitmask, or every exposed ore has its vein walked into a fresh index.
+ */
+@State(Scope.Thread)
+public class OreKernelsBenchmark {
+    @Param({ "STONE", "CHEESE", "ORES" })
+    public SyntheticWorld kind;
+
+    private WorldSnapshot world;
+    private long[] exposedOres;
+    private final BitSet oreStates = new BitSet();
+
+    @Setup
+    public void setup() {
+        world = kind.build();
+        oreStates.set(SyntheticWorld.ORE_ID);
+
+        LongArrayList exposed = new LongArrayList();
+        for (int x = 0; x < SyntheticWorld.SIZE_XZ; x++) {
+            for (int z = 0; z < SyntheticWorld.SIZE_XZ; z++) {
+                for (int y = 0; y < SyntheticWorld.SIZE_Y; y++) {
+                    if (world.getStateId(x, y, z) == SyntheticWorld.ORE_ID && OreKernels.isExposed(world, x, y, z)) {
+                        exposed.add(PackedPos.pack(x, y, z));
+                    }
+                }
+            }
+        }
+        exposedOres = exposed.toLongArray();
+    }
+
+    @Benchmark
+    public int isExposed() {
+        int found = 0;
+        for (int x = 0; x < SyntheticWorld.SIZE_XZ; x++) {
+            for (int z = 0; z < SyntheticWorld.SIZE_XZ; z++) {
+                for (int y = 0; y < SyntheticWorld.SIZE_Y; y++) {
+                    if (world.getStateId(x, y, z) == SyntheticWorld.ORE_ID && OreKernels.isExposed(world, x, y, z)) found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int exposedMask() {
+        int found = 0;
+        for (int sx = 0; sx < SyntheticWorld.CHUNKS; sx++) {
+            for (int sz = 0; sz < SyntheticWorld.CHUNKS; sz++) {
+                for (int sy = 0; sy < SyntheticWorld.SECTIONS; sy++) {
+                    SectionSnapshot section = world.getSection(sx, sy, sz);
+                    if (!section.containsAny(oreStates)) continue;
+                    for (long word : OreKernels.exposedMask(world, sx, sy, sz, section.mask(oreStates))) found += Long.bitCount(word);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int findVein() {
+        ChunkIndex ores = new ChunkIndex();
+        for (long seed : exposedOres) {
+            int x = PackedPos.x(seed), y = PackedPos.y(seed), z = PackedPos.z(seed);
+            if (ores.add(x, y, z)) OreKernels.findVein(world, x, y, z, id -> id == SyntheticWorld.ORE_ID, ores::add);
+        }
+        return ores.size();
+    }
+}
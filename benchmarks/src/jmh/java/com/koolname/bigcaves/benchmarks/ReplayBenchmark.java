@@ -0,0 +1,115 @@
+package com.koolname.bigcaves.benchmarks;
+
+import com.koolname.bigcaves.scan.AirComponents;
+import com.koolname.bigcaves.scan.AirKernels;
+import com.koolname.bigcaves.scan.BlockSource;
+import com.koolname.bigcaves.scan.ChunkRecording;
+import com.koolname.bigcaves.scan.ChunkIndex;
+import com.koolname.bigcaves.scan.ChunkSnapshot;
+import com.koolname.bigcaves.scan.OreKernels;
+import com.koolname.bigcaves.scan.SectionSnapshot;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+/**
+ * Full cave and ore passes over a recording made with the scan-recorder module, to compare versions on
+ * identical real-world data. The passes capture through {@link BlockSource} and run the same volume checks,
+ * labeling and exposed-ore search as the modules. Pass the file with {@code -Pjmh.recording=<path>}; without
+ * one a recording of the synthetic ore world is made and replayed, which also exercises the file format.
+ */
+@State(Scope.Thread)
+public class ReplayBenchmark {
+    private static final int STEP = 16;
+    private static final int THRESHOLD = 2000;
+    private static final int MIN_CAVE = 5000;
+    private static final int FLOOD_LIMIT = 200_000;
+
+    @Param({ "synthetic" })
+    public String recording;
+
+    private WorldSnapshot world;
+    private BitSet ores;
+    private int minX, minY, minZ, maxX, maxY, maxZ;
+    private final AirComponents components = new AirComponents();
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        ChunkRecording replay = ChunkRecording.read(recording.equals("synthetic") ? recordSynthetic() : Path.of(recording));
+        ores = replay.statesMatching(name -> name.contains("_ore") || name.contains("ancient_debris"));
+
+        minX = minY = minZ = Integer.MAX_VALUE;
+        maxX = maxY = maxZ = Integer.MIN_VALUE;
+        for (ChunkSnapshot chunk : replay.getChunks()) {
+            minX = Math.min(minX, chunk.getChunkX() << 4);
+            maxX = Math.max(maxX, (chunk.getChunkX() << 4) + 15);
+            minZ = Math.min(minZ, chunk.getChunkZ() << 4);
+            maxZ = Math.max(maxZ, (chunk.getChunkZ() << 4) + 15);
+            minY = Math.min(minY, chunk.getBottomSectionY() << 4);
+            maxY = Math.max(maxY, (chunk.getTopSectionY() << 4) + 15);
+        }
+
+        BlockSource blocks = replay;
+        world = blocks.capture(minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, minY, maxY);
+    }
+
+    /** The air checks and labeling of a cave scan over every volume of the recording. */
+    @Benchmark
+    public int caveScan() {
+        int startX = Math.floorDiv(minX, STEP) * STEP, startY = Math.floorDiv(minY, STEP) * STEP, startZ = Math.floorDiv(minZ, STEP) * STEP;
+        int volumesX = (maxX - startX) / STEP + 1, volumesY = (maxY - startY) / STEP + 1, volumesZ = (maxZ - startZ) / STEP + 1;
+        int radius = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+
+        int caves = 0;
+        components.begin((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2, radius,
+            startX, startY, startZ, STEP, volumesX, volumesY, volumesZ);
+        try {
+            for (int x = startX; x <= maxX; x += STEP) {
+                for (int z = startZ; z <= maxZ; z += STEP) {
+                    for (int y = startY; y <= maxY; y += STEP) {
+                        if (!AirKernels.isCaveVolume(world, x, y, z, STEP, THRESHOLD)) continue;
+                        if (components.caveAtCenter(world, x, y, z, FLOOD_LIMIT, MIN_CAVE) != null) caves++;
+                    }
+                }
+            }
+        } finally {
+            components.end();
+        }
+        return caves;
+    }
+
+    /** A player-radius ore scan over the whole recording: palette filter, exposure and vein walks. */
+    @Benchmark
+    public int oreScan() {
+        ChunkIndex found = new ChunkIndex();
+        for (ChunkSnapshot chunk : world.getChunks()) {
+            for (int sy = chunk.getBottomSectionY(); sy <= chunk.getTopSectionY(); sy++) {
+                SectionSnapshot section = chunk.getSection(sy);
+                if (!section.containsAny(ores)) continue;
+
+                int x0 = chunk.getChunkX() << 4, y0 = sy << 4, z0 = chunk.getChunkZ() << 4;
+                OreKernels.forEachExposed(world, section, chunk.getChunkX(), sy, chunk.getChunkZ(), ores,
+                    x0, y0, z0, x0 + 15, y0 + 15, z0 + 15, (x, y, z, ore) -> {
+                        if (found.add(x, y, z)) OreKernels.findVein(world, x, y, z, id -> id == ore, found::add);
+                    });
+            }
+        }
+        return found.size();
+    }
+
+    private static Path recordSynthetic() throws IOException {
+        Path file = Files.createTempFile("synthetic", ".bcrec");
+        file.toFile().deleteOnExit();
+        String[] names = { "Block{minecraft:air}", "Block{minecraft:stone}", "Block{minecraft:diamond_ore}" };
+        ChunkRecording.write(file, SyntheticWorld.ORES.build().getChunks(), id -> names[id]);
+        return file;
+    }
+}
@@ -0,0 +1,108 @@
+package com.koolname.bigcaves.benchmarks;
+
+import com.koolname.bigcaves.scan.ChunkSnapshot;
+import com.koolname.bigcaves.scan.SectionSnapshot;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * Voxel worlds for the benchmarks, built straight into snapshots so no Minecraft client is needed.
+ * <p>
+ * The world is {@link #CHUNKS}x{@link #CHUNKS} chunks and {@link #SECTIONS} sections high, starting at
+ * block 0 on every axis. State ids follow the palette below; only air carries flags.
+ */
+public enum SyntheticWorld {
+    /** Nothing but stone, the common case where every check should bail out early. */
+    STONE,
+    /** Stone carved by 3D value noise into large connected caves, like cheese caves. */
+    CHEESE,
+    /** Cheese caves with a quarter of the remaining stone turned into ore clusters. */
+    ORES;
+
+    public static final int AIR = 0;
+    public static final int STONE_ID = 1;
+    public static final int ORE_ID = 2;
+
+    public static final int CHUNKS = 8;
+    public static final int SECTIONS = 8;
+    public static final int SIZE_XZ = CHUNKS * 16;
+    public static final int SIZE_Y = SECTIONS * 16;
+
+    private static final byte AIR_FLAGS = (byte) (SectionSnapshot.FLAG_AIR | SectionSnapshot.FLAG_PASSABLE | SectionSnapshot.FLAG_SKYLIGHT);
+
+    public WorldSnapshot build() {
+        int[] paletteIds = { AIR, STONE_ID, ORE_ID };
+        byte[] paletteFlags = { AIR_FLAGS, 0, 0 };
+        short[] indices = new short[SectionSnapshot.VOLUME];
+
+        Long2ObjectOpenHashMap<ChunkSnapshot> chunks = new Long2ObjectOpenHashMap<>();
+        for (int cx = 0; cx < CHUNKS; cx++) {
+            for (int cz = 0; cz < CHUNKS; cz++) {
+                SectionSnapshot[] sections = new SectionSnapshot[SECTIONS];
+                for (int sy = 0; sy < SECTIONS; sy++) {
+                    for (int y = 0; y < 16; y++) {
+                        for (int z = 0; z < 16; z++) {
+                            for (int x = 0; x < 16; x++) {
+                                indices[SectionSnapshot.index(x, y, z)] = (short) block((cx << 4) + x, (sy << 4) + y, (cz << 4) + z);
+                            }
+                        }
+                    }
+                    sections[sy] = compact(indices, paletteIds, paletteFlags);
+                }
+                chunks.put(ChunkSnapshot.key(cx, cz), new ChunkSnapshot(cx, cz, 0, sections));
+            }
+        }
+        return new WorldSnapshot(chunks);
+    }
+
+    // Palette with only the states the section uses, the same as a captured section would have
+    private static SectionSnapshot compact(short[] indices, int[] paletteIds, byte[] paletteFlags) {
+        int[] remap = { -1, -1, -1 };
+        int[] ids = new int[paletteIds.length];
+        byte[] flags = new byte[paletteIds.length];
+        int size = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int state = indices[i];
+            if (remap[state] < 0) {
+                remap[state] = size;
+                ids[size] = paletteIds[state];
+                flags[size++] = paletteFlags[state];
+            }
+            indices[i] = (short) remap[state];
+        }
+        return SectionSnapshot.of(ids, flags, size, indices);
+    }
+
+    private int block(int x, int y, int z) {
+        if (this == STONE) return STONE_ID;
+        // Low frequency noise, thresholded so roughly a third of the world is open
+        if (noise(x / 24.0, y / 16.0, z / 24.0, 1) > 0.62) return AIR;
+        if (this == ORES && noise(x / 3.0, y / 3.0, z / 3.0, 2) > 0.75) return ORE_ID;
+        return STONE_ID;
+    }
+
+    // Trilinearly interpolated value noise in 0..1
+    private static double noise(double x, double y, double z, long seed) {
+        int x0 = (int) Math.floor(x), y0 = (int) Math.floor(y), z0 = (int) Math.floor(z);
+        double fx = smooth(x - x0), fy = smooth(y - y0), fz = smooth(z - z0);
+
+        double result = 0;
+        for (int corner = 0; corner < 8; corner++) {
+            int dx = corner & 1, dy = corner >> 1 & 1, dz = corner >> 2 & 1;
+            double weight = (dx == 1 ? fx : 1 - fx) * (dy == 1 ? fy : 1 - fy) * (dz == 1 ? fz : 1 - fz);
+            result += weight * lattice(x0 + dx, y0 + dy, z0 + dz, seed);
+        }
+        return result;
+    }
+
+    private static double smooth(double t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static double lattice(int x, int y, int z, long seed) {
+        long h = seed * 0x9E3779B97F4A7C15L + x * 0xC2B2AE3D27D4EB4FL + y * 0x165667B19E3779F9L + z * 0x27D4EB2F165667C5L;
+        h = (h ^ h >>> 31) * 0x94D049BB133111EBL;
+        h ^= h >>> 29;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
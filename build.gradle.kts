@@ -17,6 +17,7 @@ repositories {
         name = "meteor-maven-snapshots"
         url = uri("https://maven.meteordev.org/snapshots")
     }
+    mavenCentral()
 }
 
 dependencies {
@@ -27,6 +28,11 @@ dependencies {
 
     // Meteor
     modImplementation("meteordevelopment:meteor-client:${properties["minecraft_version"] as String}-SNAPSHOT")
+
+    // Tests
+    testImplementation(platform("org.junit:junit-bom:${properties["junit_version"] as String}"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks {
@@ -45,6 +51,10 @@ tasks {
         }
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
     jar {
         inputs.property("archivesName", project.base.archivesName.get())
 
@@ -1,8 +1,17 @@
 package com.koolname.bigcaves;
 
+import com.koolname.bigcaves.hud.ScanStatsHud;
 import com.koolname.bigcaves.modules.BigCavesFinder;
 import com.koolname.bigcaves.modules.OreEsp;
+import com.koolname.bigcaves.modules.ScanRecorder;
+import com.koolname.bigcaves.scan.ScanPipeline;
+import com.koolname.bigcaves.scan.SnapshotCache;
+import com.koolname.bigcaves.scan.SnapshotCapture;
+import com.koolname.bigcaves.scan.WorldTracker;
+import com.koolname.bigcaves.stats.GameLoad;
+import meteordevelopment.meteorclient.MeteorClient;
 import meteordevelopment.meteorclient.addons.MeteorAddon;
+import meteordevelopment.meteorclient.systems.hud.Hud;
 import meteordevelopment.meteorclient.systems.hud.HudGroup;
 import meteordevelopment.meteorclient.systems.modules.Category;
 import meteordevelopment.meteorclient.systems.modules.Modules;
@@ -21,6 +30,19 @@ public class BigCavesAddon extends MeteorAddon {
         // Register custom modules under the Cave Tools category
         Modules.get().add(new BigCavesFinder());
         Modules.get().add(new OreEsp());
+        Modules.get().add(new ScanRecorder());
+
+        // Scan timings and throughput, the same figures are recorded as Flight Recorder events
+        Hud.get().register(ScanStatsHud.INFO);
+
+        // Section snapshots shared by both modules, invalidated by world change events
+        MeteorClient.EVENT_BUS.subscribe(SnapshotCache.get());
+        // One scan thread and one capture per pass for both modules
+        ScanPipeline.get().setSource(SnapshotCapture.CLIENT);
+        // A new scan session for every world, the old world's scans stop and their results are dropped
+        MeteorClient.EVENT_BUS.subscribe(WorldTracker.get());
+        // Frame and server tick times the scan throttle holds the scanners to
+        MeteorClient.EVENT_BUS.subscribe(GameLoad.get());
     }
 
     @Override
@@ -0,0 +1,18 @@
+package com.koolname.bigcaves.events;
+
+/**
+ * Posted on the client thread after the server changes a single block, either through a block update
+ * or as part of a chunk delta packet.
+ */
+public class BlockChangedEvent {
+    private static final BlockChangedEvent INSTANCE = new BlockChangedEvent();
+
+    public int x, y, z;
+
+    public static BlockChangedEvent get(int x, int y, int z) {
+        INSTANCE.x = x;
+        INSTANCE.y = y;
+        INSTANCE.z = z;
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,18 @@
+package com.koolname.bigcaves.events;
+
+/**
+ * Posted on the client thread, on the tick after a volume is found to be part of a big cave, whether scanned
+ * or restored from the cache. The position is the volume's low corner.
+ */
+public class CaveFoundEvent {
+    private static final CaveFoundEvent INSTANCE = new CaveFoundEvent();
+
+    public int x, y, z;
+
+    public static CaveFoundEvent get(int x, int y, int z) {
+        INSTANCE.x = x;
+        INSTANCE.y = y;
+        INSTANCE.z = z;
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,16 @@
+package com.koolname.bigcaves.events;
+
+/**
+ * Posted on the client thread after a full chunk has been received and loaded into the world.
+ */
+public class ChunkLoadedEvent {
+    private static final ChunkLoadedEvent INSTANCE = new ChunkLoadedEvent();
+
+    public int chunkX, chunkZ;
+
+    public static ChunkLoadedEvent get(int chunkX, int chunkZ) {
+        INSTANCE.chunkX = chunkX;
+        INSTANCE.chunkZ = chunkZ;
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,16 @@
+package com.koolname.bigcaves.events;
+
+/**
+ * Posted on the client thread after the server told the client to unload a chunk.
+ */
+public class ChunkUnloadedEvent {
+    private static final ChunkUnloadedEvent INSTANCE = new ChunkUnloadedEvent();
+
+    public int chunkX, chunkZ;
+
+    public static ChunkUnloadedEvent get(int chunkX, int chunkZ) {
+        INSTANCE.chunkX = chunkX;
+        INSTANCE.chunkZ = chunkZ;
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,114 @@
+package com.koolname.bigcaves.hud;
+
+import com.koolname.bigcaves.BigCavesAddon;
+import com.koolname.bigcaves.scan.ScanExecutor;
+import com.koolname.bigcaves.scan.ScanThrottle;
+import com.koolname.bigcaves.stats.ScanStats;
+import meteordevelopment.meteorclient.systems.hud.HudElement;
+import meteordevelopment.meteorclient.systems.hud.HudElementInfo;
+import meteordevelopment.meteorclient.systems.hud.HudRenderer;
+import meteordevelopment.meteorclient.utils.render.color.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * Pass times, throughput, cache and queue figures of the cave tools, averaged over one second windows, and
+ * where the scan throttle stands.
+ */
+public class ScanStatsHud extends HudElement {
+    public static final HudElementInfo<ScanStatsHud> INFO = new HudElementInfo<>(BigCavesAddon.HUD_GROUP, "scan-stats", "Scan timings, throughput and queue depths of the cave tools.", ScanStatsHud::new);
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final Window caves = new Window(ScanStats.get().caves);
+    private final Window ores = new Window(ScanStats.get().ores);
+    private long windowStart = System.nanoTime();
+    private long lastRaycasts;
+    private List<String> lines = List.of("Scan stats: waiting for data");
+
+    // Counter values at the start of the current window
+    private static final class Window {
+        private final ScanStats.Scanner scanner;
+        private long blocksRead, sectionsSkipped, cacheHits, cacheMisses, candidates, floodNodes;
+
+        private Window(ScanStats.Scanner scanner) {
+            this.scanner = scanner;
+        }
+
+        private String describe(String label, double seconds, boolean caves) {
+            long blocks = scanner.blocksRead.sum(), skipped = scanner.sectionsSkipped.sum();
+            long hits = scanner.cacheHits.sum(), misses = scanner.cacheMisses.sum();
+            long candidateCount = scanner.candidates.sum(), nodes = scanner.floodNodes.sum();
+
+            StringBuilder line = new StringBuilder(label).append(": ");
+            line.append(String.format("%.1f ms/pass", scanner.getLastPassNanos() / 1e6));
+            line.append(", ").append(compact((blocks - blocksRead) / seconds)).append(" blocks/s");
+            if (caves) {
+                long lookups = hits - cacheHits + misses - cacheMisses;
+                line.append(", cache ").append(lookups > 0 ? Math.round(100.0 * (hits - cacheHits) / lookups) + "%" : "-");
+                long labeled = candidateCount - candidates;
+                line.append(", ").append(labeled > 0 ? compact((double) (nodes - floodNodes) / labeled) : "-").append(" nodes/candidate");
+            } else {
+                line.append(", ").append(compact((skipped - sectionsSkipped) / seconds)).append(" sections skipped/s");
+            }
+            line.append(", queue ").append(scanner.getQueueDepth());
+
+            blocksRead = blocks;
+            sectionsSkipped = skipped;
+            cacheHits = hits;
+            cacheMisses = misses;
+            candidates = candidateCount;
+            floodNodes = nodes;
+            return line.toString();
+        }
+    }
+
+    public ScanStatsHud() {
+        super(INFO);
+    }
+
+    @Override
+    public void tick(HudRenderer renderer) {
+        long now = System.nanoTime();
+        if (now - windowStart < WINDOW_NANOS) return;
+        double seconds = (now - windowStart) / 1e9;
+        windowStart = now;
+
+        ScanStats stats = ScanStats.get();
+        long raycasts = stats.raycasts.sum();
+        double frames = Math.max(1, mc.getCurrentFps() * seconds);
+
+        List<String> next = new ArrayList<>(5);
+        next.add(caves.describe("Caves", seconds, true));
+        next.add(ores.describe("Ores", seconds, false));
+        next.add("Visibility: " + compact((raycasts - lastRaycasts) / frames) + " rays/frame");
+        next.add("Render: " + stats.getQuadsPerFrame() + " quads, " + stats.getLinesPerFrame() + " lines/frame");
+        ScanThrottle throttle = ScanThrottle.get();
+        next.add(String.format("Throttle: %.0f%%, %d workers, %.0f%% CPU, %.1f ms/frame", throttle.getLevel() * 100,
+            ScanExecutor.get().getParallelism(), throttle.getCpuShare() * 100, throttle.getFrameMillis()));
+        lastRaycasts = raycasts;
+        lines = next;
+    }
+
+    @Override
+    public void render(HudRenderer renderer) {
+        double width = 0;
+        double height = renderer.textHeight(true);
+        double y = this.y;
+        for (String line : lines) {
+            renderer.text(line, x, y, Color.WHITE, true);
+            width = Math.max(width, renderer.textWidth(line, true));
+            y += height;
+        }
+        setSize(width, height * lines.size());
+    }
+
+    private static String compact(double value) {
+        if (value >= 1e6) return String.format("%.1fM", value / 1e6);
+        if (value >= 1e3) return String.format("%.1fk", value / 1e3);
+        return String.format("%.0f", value);
+    }
+}
@@ -0,0 +1,47 @@
+package com.koolname.bigcaves.mixin;
+
+import com.koolname.bigcaves.events.BlockChangedEvent;
+import com.koolname.bigcaves.events.ChunkLoadedEvent;
+import com.koolname.bigcaves.events.ChunkUnloadedEvent;
+import meteordevelopment.meteorclient.MeteorClient;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.network.packet.s2c.play.BlockUpdateS2CPacket;
+import net.minecraft.network.packet.s2c.play.ChunkDataS2CPacket;
+import net.minecraft.network.packet.s2c.play.ChunkDeltaUpdateS2CPacket;
+import net.minecraft.network.packet.s2c.play.UnloadChunkS2CPacket;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Turns world-changing packets into events so scanners only revisit what changed.
+ * <p>
+ * All handlers inject at {@code TAIL}: the first call of each packet handler happens on the network
+ * thread and bails out of the method by rescheduling itself onto the client thread, so the tail is only
+ * reached once, on the client thread, after the world has been updated.
+ */
+@Mixin(ClientPlayNetworkHandler.class)
+public abstract class ClientPlayNetworkHandlerMixin {
+    @Inject(method = "onChunkData", at = @At("TAIL"))
+    private void onChunkData(ChunkDataS2CPacket packet, CallbackInfo ci) {
+        MeteorClient.EVENT_BUS.post(ChunkLoadedEvent.get(packet.getChunkX(), packet.getChunkZ()));
+    }
+
+    @Inject(method = "onUnloadChunk", at = @At("TAIL"))
+    private void onUnloadChunk(UnloadChunkS2CPacket packet, CallbackInfo ci) {
+        MeteorClient.EVENT_BUS.post(ChunkUnloadedEvent.get(packet.pos().x, packet.pos().z));
+    }
+
+    @Inject(method = "onBlockUpdate", at = @At("TAIL"))
+    private void onBlockUpdate(BlockUpdateS2CPacket packet, CallbackInfo ci) {
+        BlockPos pos = packet.getPos();
+        MeteorClient.EVENT_BUS.post(BlockChangedEvent.get(pos.getX(), pos.getY(), pos.getZ()));
+    }
+
+    @Inject(method = "onChunkDeltaUpdate", at = @At("TAIL"))
+    private void onChunkDeltaUpdate(ChunkDeltaUpdateS2CPacket packet, CallbackInfo ci) {
+        packet.visitUpdates((pos, state) -> MeteorClient.EVENT_BUS.post(BlockChangedEvent.get(pos.getX(), pos.getY(), pos.getZ())));
+    }
+}
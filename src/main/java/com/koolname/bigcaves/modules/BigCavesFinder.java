@@ -1,31 +1,65 @@
 package com.koolname.bigcaves.modules;
 
+import com.koolname.bigcaves.events.BlockChangedEvent;
+import com.koolname.bigcaves.events.CaveFoundEvent;
+import com.koolname.bigcaves.events.ChunkLoadedEvent;
+import com.koolname.bigcaves.events.ChunkUnloadedEvent;
+import com.koolname.bigcaves.render.CellMesh;
+import com.koolname.bigcaves.render.LodRenderer;
+import com.koolname.bigcaves.scan.AirComponents;
+import com.koolname.bigcaves.scan.AirKernels;
+import com.koolname.bigcaves.scan.BlockSource;
+import com.koolname.bigcaves.scan.ChunkSnapshot;
+import com.koolname.bigcaves.scan.FloodFill;
+import com.koolname.bigcaves.scan.PackedPos;
+import com.koolname.bigcaves.scan.ScanExecutor;
+import com.koolname.bigcaves.scan.ScanPipeline;
+import com.koolname.bigcaves.scan.ScanScheduler;
+import com.koolname.bigcaves.scan.ScanSession;
+import com.koolname.bigcaves.scan.ScanThrottle;
+import com.koolname.bigcaves.scan.SectionSnapshot;
+import com.koolname.bigcaves.scan.SnapshotCapture;
+import com.koolname.bigcaves.scan.VolumeCache;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import com.koolname.bigcaves.stats.RenderFrameEvent;
+import com.koolname.bigcaves.stats.ScanStats;
+import com.koolname.bigcaves.store.ScanStore;
+import meteordevelopment.meteorclient.MeteorClient;
 import meteordevelopment.meteorclient.events.render.Render3DEvent;
+import meteordevelopment.meteorclient.events.world.TickEvent;
 import meteordevelopment.meteorclient.renderer.ShapeMode;
 import meteordevelopment.meteorclient.settings.*;
 import meteordevelopment.meteorclient.systems.modules.Module;
 import meteordevelopment.meteorclient.utils.render.color.SettingColor;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import meteordevelopment.orbit.EventHandler;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
-import net.minecraft.world.chunk.Chunk;
-import net.minecraft.world.chunk.EmptyChunk;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class BigCavesFinder extends Module {
     private static final Logger LOGGER = Logger.getLogger(BigCavesFinder.class.getName());
+    /** Position in every pipeline pass; scanners that use the caves run after it. */
+    public static final int PIPELINE_ORDER = 0;
+
+    private static final CellMesh[] NO_MESHES = new CellMesh[0];
 
     private final SettingGroup sgGeneral = settings.getDefaultGroup();
     private final SettingGroup sgScan = settings.createGroup("Scan Settings");
     private final SettingGroup sgRender = settings.createGroup("Render Settings");
+    private final SettingGroup sgPerformance = settings.createGroup("Performance");
 
     private final Setting<Integer> scanDelay = sgGeneral.add(new IntSetting.Builder()
         .name("scan-delay-ticks")
-        .description("Delay in ticks between scans.")
+        .description("Least delay in ticks between scans; the throttle stretches it while the game is busy.")
         .defaultValue(200)
         .min(20).sliderMax(600)
         .build()
@@ -93,15 +127,67 @@ public class BigCavesFinder extends Module {
         .build()
     );
 
-    public final Set<BlockPos> foundCaves = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Setting<Integer> detailDistance = sgRender.add(new IntSetting.Builder()
+        .name("detail-distance")
+        .description("Caves farther away than this are drawn as a single box.")
+        .defaultValue(96)
+        .min(0).sliderMax(512)
+        .build()
+    );
 
-    private Thread scanThread;
-    private final Map<Long, Long> volumeCache = new ConcurrentHashMap<>();
-    private final int cacheTtlMillis = 5000; // Cache volume origins for 5 seconds
+    private final Setting<Integer> minScreenSize = sgRender.add(new IntSetting.Builder()
+        .name("min-screen-size")
+        .description("Caves smaller than this many pixels on screen are not drawn. 0 draws every cave.")
+        .defaultValue(2)
+        .min(0).sliderMax(16)
+        .build()
+    );
+
+    private final ScanPerformance performance = new ScanPerformance(this, sgPerformance);
 
-    // Flood fill node limits to avoid heavy processing
-    private final int maxFloodNodesSingleplayer = 200_000;
-    private final int maxFloodNodesMultiplayer = 20_000;
+    public final Set<BlockPos> foundCaves = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // Cave id of every found volume, and the component summary behind each id
+    public final Map<BlockPos, Long> volumeCaves = new ConcurrentHashMap<>();
+    public final Map<Long, AirComponents.Component> caves = new ConcurrentHashMap<>();
+    // Bumped whenever foundCaves changes, the scan thread rebuilds the meshes when it sees a new value
+    private final AtomicInteger cavesVersion = new AtomicInteger();
+    private int meshVersion = -1;
+    // One mesh per cave, swapped in whole by the scan thread; the render thread only reads the array
+    private volatile CellMesh[] caveMeshes = NO_MESHES;
+    private CellMesh[] drawnMeshes = NO_MESHES;
+    private final LodRenderer lod = new LodRenderer();
+
+    private final ScanPipeline pipeline = ScanPipeline.get();
+    private final ScanThrottle throttle = ScanThrottle.get();
+    private final CaveStage stage = new CaveStage();
+    private final AirComponents components = new AirComponents();
+    // Small fills that tie a volume to the known cave of a neighbour without flooding the cave again
+    private final FloodFill attachFill = new FloodFill();
+    private final ScanScheduler scheduler = new ScanScheduler(20);
+    private final Set<BlockPos> dirtyVolumes = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // Found by the scan threads, announced from the client tick
+    private final Queue<BlockPos> pendingFound = new ConcurrentLinkedQueue<>();
+    // Changes are event driven, re-check clean volumes once a minute. Room for a full 128 block radius at
+    // the smallest volume size, about 1 MB
+    private final VolumeCache volumeCache = new VolumeCache(1 << 16, 60_000);
+    // Session of the running pass, and the one the scan state below belongs to
+    private ScanSession session;
+    private ScanSession scannedSession;
+    private volatile int volumeStep;
+    // Volume grid cell of the player at the last sweep, and the range that sweep covered
+    private volatile long sweptCell;
+    private BlockPos rangeStart, rangeEnd;
+
+    // Results of earlier sessions; only touched by the scan thread. Records of arriving chunks are checked
+    // against their own small snapshot
+    private ScanStore store;
+    private final BlockSource blocks = SnapshotCapture.CLIENT;
+    private final Set<Long> pendingRestore = ConcurrentHashMap.newKeySet();
+    private final Set<Long> unsavedChunks = ConcurrentHashMap.newKeySet();
+
+    // Most flood fill nodes per component; the throttle lowers the budget while the game is busy
+    private static final int MAX_FLOOD_NODES_SINGLEPLAYER = 200_000;
+    private static final int MAX_FLOOD_NODES_MULTIPLAYER = 20_000;
 
     public BigCavesFinder() {
         super(com.koolname.bigcaves.BigCavesAddon.CATEGORY, "big-caves-finder", "Finds and highlights large cave systems (optimized).");
@@ -109,181 +195,699 @@ public class BigCavesFinder extends Module {
 
     @Override
     public void onActivate() {
-        foundCaves.clear();
+        clearCaves();
         volumeCache.clear();
-        startScanThread();
+        dirtyVolumes.clear();
+        pendingRestore.clear();
+        unsavedChunks.clear();
+        performance.apply();
+        pipeline.register(stage, PIPELINE_ORDER);
     }
 
     @Override
     public void onDeactivate() {
-        foundCaves.clear();
+        pipeline.unregister(stage);
+        clearCaves();
         volumeCache.clear();
-        if (scanThread != null && scanThread.isAlive()) {
-            scanThread.interrupt();
+        dirtyVolumes.clear();
+        pendingRestore.clear();
+        unsavedChunks.clear();
+        scannedSession = null;
+        ScanStats.get().setCaveRender(0, 0);
+        performance.release();
+    }
+
+    @EventHandler
+    private void onBlockChanged(BlockChangedEvent event) {
+        // The change may move the sky ceiling of its column, which the air checks of every volume below read
+        markDirty(event.x, mc.world != null ? mc.world.getBottomY() : event.y, event.z, event.x, event.y, event.z);
+        pipeline.signal();
+    }
+
+    @EventHandler
+    private void onTick(TickEvent.Post event) {
+        postFoundCaves();
+        // Stepping into another grid cell brings new volumes into range, sweep for them without waiting
+        if (mc.player != null && volumeStep > 0 && playerCell() != sweptCell) pipeline.signal();
+    }
+
+    // Volumes dropped again before the tick, or cleared with their session, are not announced
+    private void postFoundCaves() {
+        for (BlockPos origin; (origin = pendingFound.poll()) != null; ) {
+            if (foundCaves.contains(origin)) MeteorClient.EVENT_BUS.post(CaveFoundEvent.get(origin.getX(), origin.getY(), origin.getZ()));
         }
     }
 
+    @EventHandler
+    private void onChunkLoaded(ChunkLoadedEvent event) {
+        markChunkDirty(event.chunkX, event.chunkZ);
+        pendingRestore.add(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+        pipeline.signal();
+    }
+
+    @EventHandler
+    private void onChunkUnloaded(ChunkUnloadedEvent event) {
+        markChunkDirty(event.chunkX, event.chunkZ);
+        pendingRestore.remove(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+        unsavedChunks.remove(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+        pipeline.signal();
+    }
+
     @EventHandler
     private void onRender(Render3DEvent event) {
-        if (espColor.get().a == 0) return;
+        // Caves of the last world until the new session starts
+        if (espColor.get().a == 0 || pipeline.session().getWorld() != mc.world) {
+            ScanStats.get().setCaveRender(0, 0);
+            return;
+        }
+
+        RenderFrameEvent frame = RenderFrameEvent.isTypeEnabled() ? new RenderFrameEvent() : null;
+        if (frame != null) frame.begin();
+
+        CellMesh[] meshes = caveMeshes;
+        boolean rebuilt = meshes != drawnMeshes;
+        drawnMeshes = meshes;
+
+        SettingColor color = espColor.get();
+        ShapeMode mode = shapeMode.get();
+        lod.begin(detailDistance.get(), minScreenSize.get());
+        for (int i = 0; i < meshes.length; i++) lod.render(event.renderer, meshes[i], color, color, mode);
+
+        int quads = lod.getQuads();
+        int lines = lod.getLines();
+        ScanStats.get().setCaveRender(quads, lines);
+        if (frame != null && frame.shouldCommit()) {
+            frame.module = name;
+            frame.quads = quads;
+            frame.lines = lines;
+            frame.rebuilt = rebuilt;
+            frame.commit();
+        }
+    }
+
+    /**
+     * Rebuilds the meshes if the caves changed since the last build and swaps them in for the render thread.
+     * Called by the scan thread after every slice; meshes of a session that ended are not swapped in.
+     */
+    private void publishMeshes() {
+        int version = cavesVersion.get();
+        if (version == meshVersion) return;
+        meshVersion = version;
+        CellMesh[] meshes = buildCaveMeshes();
+        session.publish(() -> caveMeshes = meshes);
+    }
+
+    // Neighbouring volumes of one cave render as a single surface instead of a box each, one mesh per cave
+    // so each can be culled on its own
+    private CellMesh[] buildCaveMeshes() {
         int size = checkVolumeSize.get();
+        Map<Long, LongOpenHashSet> cells = new HashMap<>();
         for (BlockPos pos : foundCaves) {
-            double x2 = pos.getX() + size;
-            double y2 = pos.getY() + size;
-            double z2 = pos.getZ() + size;
-            event.renderer.box(pos.getX(), pos.getY(), pos.getZ(), x2, y2, z2, espColor.get(), espColor.get(), shapeMode.get(), 0);
+            // Volumes not yet tied to a cave share the null key
+            cells.computeIfAbsent(volumeCaves.get(pos), id -> new LongOpenHashSet())
+                .add(PackedPos.pack(Math.floorDiv(pos.getX(), size), Math.floorDiv(pos.getY(), size), Math.floorDiv(pos.getZ(), size)));
         }
+
+        CellMesh[] meshes = new CellMesh[cells.size()];
+        int i = 0;
+        for (LongOpenHashSet caveCells : cells.values()) meshes[i++] = CellMesh.build(caveCells, size);
+        return meshes;
     }
 
-    private void startScanThread() {
-        scanThread = new Thread(() -> {
-            while (isActive() && mc.world != null && mc.player != null) {
-                try {
-                    foundCaves.clear();
-
-                    boolean singleplayer = mc.isIntegratedServerRunning();
-                    int floodLimit = singleplayer ? maxFloodNodesSingleplayer : maxFloodNodesMultiplayer;
-
-                    BlockPos playerPos = mc.player.getBlockPos();
-                    int step = checkVolumeSize.get();
-                    int worldBottomY = mc.world.getDimension().minY();
-                    int hRadius = Math.min(scanRadius.get(), 128);
-                    int vRadius = Math.min(verticalRadius.get(), 64);
-
-                    int startX = playerPos.getX() - hRadius;
-                    int endX = playerPos.getX() + hRadius;
-                    int startY = Math.max(worldBottomY, playerPos.getY() - vRadius);
-                    int endY = Math.min(maxScanHeight.get(), playerPos.getY() + vRadius);
-                    int startZ = playerPos.getZ() - hRadius;
-                    int endZ = playerPos.getZ() + hRadius;
-
-                    for (int x = startX; x <= endX; x += step) {
-                        if (Thread.interrupted()) return;
-                        for (int z = startZ; z <= endZ; z += step) {
-                            if (Thread.interrupted()) return;
-                            if (!isColumnChunksReady(x, z, step)) continue;
-
-                            for (int y = startY; y <= endY; y += step) {
-                                if (Thread.interrupted()) return;
-
-                                BlockPos origin = new BlockPos(x, y, z);
-                                long key = volumeKey(origin);
-                                long now = System.currentTimeMillis();
-
-                                Long lastSeen = volumeCache.get(key);
-                                if (lastSeen != null && (now - lastSeen) < cacheTtlMillis) continue;
-
-                                if (!quickAirEstimate(origin, step)) {
-                                    volumeCache.put(key, now);
-                                    continue;
-                                }
-
-                                int airCount = countAirWithEarlyExit(origin, step, caveThreshold.get());
-                                volumeCache.put(key, now);
-                                if (airCount < caveThreshold.get()) continue;
-
-                                BlockPos center = origin.add(step / 2, step / 2, step / 2);
-                                if (!mc.world.getBlockState(center).isAir() || mc.world.isSkyVisible(center)) continue;
-
-                                int connected = countConnectedAirBounded(center, mc.player.getBlockPos(), floodLimit);
-                                if (connected >= minCaveSize.get()) {
-                                    foundCaves.add(origin);
-                                }
-                            }
-                        }
+    private void markChunkDirty(int chunkX, int chunkZ) {
+        if (mc.world == null) return;
+        int x = chunkX << 4;
+        int z = chunkZ << 4;
+        markDirty(x, mc.world.getBottomY(), z, x + 15, mc.world.getTopYInclusive(), z + 15);
+    }
+
+    // Queues every volume overlapping the given block box for re-evaluation
+    private void markDirty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int step = volumeStep;
+        if (step <= 0) return;
+
+        for (int x = Math.floorDiv(minX, step) * step; x <= maxX; x += step) {
+            for (int z = Math.floorDiv(minZ, step) * step; z <= maxZ; z += step) {
+                for (int y = Math.floorDiv(minY, step) * step; y <= maxY; y += step) {
+                    dirtyVolumes.add(new BlockPos(x, y, z));
+                }
+            }
+        }
+    }
+
+    // The cave finder's part of every pipeline pass; its state lives on the module
+    private class CaveStage implements ScanPipeline.Stage {
+        private long lastSweep;
+        // What prepare() planned for the pass
+        private List<BlockPos> pending;
+        private BlockPos playerPos;
+        private int step, floodLimit, fingerprint, hRadius;
+        private int startX, startY, startZ, endX, endY, endZ;
+        // Height of everything the flood fills may reach, and that region once a fill needed it
+        private int fillMinY, fillMaxY;
+        private WorldSnapshot fillWorld;
+
+        @Override
+        public ScanPipeline.Region prepare() throws InterruptedException {
+            if (!isActive() || mc.world == null || mc.player == null) return null;
+            session = pipeline.session();
+            if (session.getWorld() != mc.world) return null;
+
+            long delay = throttle.delayMillis(Math.max(50L, scanDelay.get() * 50L));
+            boolean sweep = System.currentTimeMillis() - lastSweep >= delay || playerCell() != sweptCell;
+            if (sweep) lastSweep = System.currentTimeMillis();
+
+            performance.apply();
+            openStore();
+            ScanPipeline.Region region = plan(sweep);
+            // Restored and retired volumes show up even when there is nothing to scan
+            publishMeshes();
+            return region;
+        }
+
+        /**
+         * Picks the volumes of the pass: those that changed since the last pass and, on a sweep, the ones in
+         * range that were never evaluated, which after a move are the ones that just entered the radius.
+         * Volumes sit on a world-aligned grid so their results stay valid while the player moves; volumes that
+         * leave the radius are retired, so the work of a pass follows the newly revealed area. Only the pending
+         * volumes and their neighbours are captured up front, after a move that is the slab that came into
+         * range.
+         */
+        private ScanPipeline.Region plan(boolean sweep) throws InterruptedException {
+            boolean singleplayer = mc.isIntegratedServerRunning();
+            int maxFloodNodes = singleplayer ? MAX_FLOOD_NODES_SINGLEPLAYER : MAX_FLOOD_NODES_MULTIPLAYER;
+            // A fill cut short at the budget still marks a cave as long as the budget is above the minimum size
+            floodLimit = throttle.nodeBudget(maxFloodNodes, minCaveSize.get());
+
+            playerPos = mc.player.getBlockPos();
+            step = checkVolumeSize.get();
+            int worldBottomY = mc.world.getDimension().minY();
+            hRadius = Math.min(scanRadius.get(), 128);
+            int vRadius = Math.min(verticalRadius.get(), 64);
+
+            if (step != volumeStep || session != scannedSession) {
+                // The grid or the world changed, nothing cached so far lines up with it
+                volumeStep = step;
+                scannedSession = session;
+                clearCaves();
+                volumeCache.clear();
+                dirtyVolumes.clear();
+                unsavedChunks.clear();
+                rangeStart = rangeEnd = null;
+                queueLoadedChunks();
+                sweep = true;
+            }
+            // Stored results are only reused when made with the same settings
+            fingerprint = Objects.hash(step, caveThreshold.get(), minCaveSize.get(), maxFloodNodes);
+
+            startX = Math.floorDiv(playerPos.getX() - hRadius, step) * step;
+            endX = playerPos.getX() + hRadius;
+            startY = Math.floorDiv(Math.max(worldBottomY, playerPos.getY() - vRadius), step) * step;
+            endY = Math.min(maxScanHeight.get(), playerPos.getY() + vRadius);
+            startZ = Math.floorDiv(playerPos.getZ() - hRadius, step) * step;
+            endZ = playerPos.getZ() + hRadius;
+
+            retireVolumes(startX, startY, startZ, endX, endY, endZ, step);
+            for (BlockPos origin : foundCaves) {
+                if (origin.getX() < startX || origin.getX() > endX
+                    || origin.getY() < startY || origin.getY() > endY
+                    || origin.getZ() < startZ || origin.getZ() > endZ) {
+                    removeCave(origin);
+                }
+            }
+
+            List<BlockPos> dirty = new ArrayList<>();
+            for (Iterator<BlockPos> it = dirtyVolumes.iterator(); it.hasNext(); ) {
+                BlockPos origin = it.next();
+                it.remove();
+                volumeCache.invalidate(origin.getX(), origin.getY(), origin.getZ());
+                if (origin.getX() >= startX && origin.getX() <= endX
+                    && origin.getY() >= startY && origin.getY() <= endY
+                    && origin.getZ() >= startZ && origin.getZ() <= endZ) {
+                    dirty.add(origin);
+                }
+            }
+            // Restored volumes are fresh in the cache, so the evaluation below skips them
+            restoreChunks(fingerprint, step, startX, startY, startZ, endX, endY, endZ);
+
+            // Dirty volumes were invalidated above, a sweep finds those in range along with the new ones
+            pending = dirty;
+            if (sweep) {
+                sweptCell = playerCell();
+                pending = unevaluatedVolumes(startX, startY, startZ, endX, endY, endZ, step);
+            } else {
+                ScanStats.get().caves.cacheMisses.add(dirty.size());
+            }
+            if (pending.isEmpty()) return null;
+
+            fillMinY = Math.min(startY, playerPos.getY() - hRadius);
+            fillMaxY = Math.max(endY + step, playerPos.getY() + hRadius);
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            for (BlockPos origin : pending) {
+                minX = Math.min(minX, origin.getX());
+                minY = Math.min(minY, origin.getY());
+                minZ = Math.min(minZ, origin.getZ());
+                maxX = Math.max(maxX, origin.getX());
+                maxY = Math.max(maxY, origin.getY());
+                maxZ = Math.max(maxZ, origin.getZ());
+            }
+            return new ScanPipeline.Region(minX - step, minY - step, minZ - step,
+                maxX + 2 * step - 1, maxY + 2 * step - 1, maxZ + 2 * step - 1);
+        }
+
+        /**
+         * Everything the flood fill may reach, captured on the first fill of the pass; passes whose volumes
+         * all join known caves never need it.
+         */
+        WorldSnapshot fillWorld() throws InterruptedException {
+            if (fillWorld == null) fillWorld = blocks.capture(startX >> 4, startZ >> 4, (endX + step) >> 4, (endZ + step) >> 4, fillMinY, fillMaxY);
+            return fillWorld;
+        }
+
+        @Override
+        public void scan(WorldSnapshot world) throws InterruptedException {
+            ScanStats.Scanner stats = ScanStats.get().caves;
+            stats.beginPass();
+            stats.setQueueDepth(dirtyVolumes.size() + pending.size());
+
+            // Caves of volumes evaluated again may have changed, no volume joins them before they are flooded
+            Set<Long> relabeled = new HashSet<>();
+            for (BlockPos origin : pending) {
+                Long id = volumeCaves.get(origin);
+                if (id != null) relabeled.add(id);
+            }
+
+            // Each air component in the region is flooded once, the first volume inside it pays for all others
+            components.begin(playerPos.getX(), playerPos.getY(), playerPos.getZ(), hRadius,
+                startX, startY, startZ, step,
+                (endX - startX) / step + 1, (endY - startY) / step + 1, (endZ - startZ) / step + 1);
+            int volumes;
+            try {
+                volumes = evaluate(world, pending, step, floodLimit, relabeled);
+            } finally {
+                components.end();
+                pending = null;
+                fillWorld = null;
+            }
+
+            // Caves found to be one during the pass go by the id they were joined under
+            session.publish(() -> {
+                volumeCaves.replaceAll((origin, id) -> {
+                    AirComponents.Component cave = components.find(id);
+                    if (cave == null || cave.getId() == id) return id;
+                    cavesVersion.incrementAndGet();
+                    return cave.getId();
+                });
+                for (AirComponents.Component cave : components.getComponents()) caves.put(cave.getId(), cave);
+            });
+            // Drop summaries of caves no volume points at anymore
+            caves.keySet().retainAll(volumeCaves.values());
+            publishMeshes();
+            session.checkpoint();
+            saveChunks(world, fingerprint, step);
+
+            FloodFill floodFill = components.getFloodFill();
+            stats.floodNodes.add(floodFill.getTotalNodes());
+            stats.blocksRead.add(floodFill.getTotalNodes());
+            stats.setQueueDepth(dirtyVolumes.size());
+            stats.endPass(volumes);
+            LOGGER.log(Level.FINE, () -> String.format("Flood fill: %d fills, %d nodes, %.0f nodes/s",
+                floodFill.getFills(), floodFill.getTotalNodes(), floodFill.nodesPerSecond()));
+        }
+
+        // Until the next sweep, unless a chunk or block change needs attention first
+        @Override
+        public long delayMillis() {
+            return lastSweep + throttle.delayMillis(Math.max(50L, scanDelay.get() * 50L)) - System.currentTimeMillis();
+        }
+
+        @Override
+        public void stopped() {
+            closeStore();
+        }
+
+        @Override
+        public void sessionEnded() {
+            clearCaves();
+        }
+    }
+
+    /**
+     * Volumes run nearest first, those in view ahead of those behind, in slices that fit the time budget.
+     * Within a slice the air checks only read the snapshot and run in parallel; labeling shares its
+     * visited set across the pass, so it follows on the scan thread. Every slice publishes its caves.
+     */
+    private int evaluate(WorldSnapshot world, List<BlockPos> volumes, int step, int floodLimit, Set<Long> relabeled) throws InterruptedException {
+        ScanPerformance.updateViewer(scheduler);
+        double half = step / 2.0, radius = half * Math.sqrt(3);
+        int[] order = scheduler.order(volumes.size(), i -> {
+            BlockPos origin = volumes.get(i);
+            return scheduler.priority(origin.getX() + half, origin.getY() + half, origin.getZ() + half, radius);
+        });
+
+        scheduler.run(order.length, (from, to) -> {
+            boolean[] candidate = new boolean[to - from];
+            ScanExecutor.get().forEach(to - from, i -> {
+                session.checkpoint();
+                candidate[i] = isCandidate(world, volumes.get(order[from + i]), step);
+            });
+
+            ScanStats.get().caves.setQueueDepth(dirtyVolumes.size() + order.length - to);
+            for (int i = 0; i < to - from; i++) {
+                if (!candidate[i]) continue;
+                session.checkpoint();
+                ScanStats.get().caves.candidates.increment();
+                BlockPos origin = volumes.get(order[from + i]);
+                AirComponents.Component cave = attachCave(world, origin, step, relabeled);
+                if (cave == null) cave = labelCave(stage.fillWorld(), origin, floodLimit);
+                if (cave != null) {
+                    caves.put(cave.getId(), cave);
+                    addCave(origin, cave);
+                } else {
+                    removeCave(origin);
+                }
+                markEvaluated(origin);
+            }
+            publishMeshes();
+        });
+        return volumes.size();
+    }
+
+    // Volumes in range without a fresh result
+    private List<BlockPos> unevaluatedVolumes(int startX, int startY, int startZ, int endX, int endY, int endZ, int step) {
+        ScanStats.Scanner stats = ScanStats.get().caves;
+        long now = System.currentTimeMillis();
+        List<BlockPos> volumes = new ArrayList<>();
+        for (int x = startX; x <= endX; x += step) {
+            for (int z = startZ; z <= endZ; z += step) {
+                for (int y = startY; y <= endY; y += step) {
+                    if (volumeCache.isFresh(x, y, z, now)) {
+                        stats.cacheHits.increment();
+                    } else {
+                        stats.cacheMisses.increment();
+                        volumes.add(new BlockPos(x, y, z));
                     }
+                }
+            }
+        }
+        return volumes;
+    }
 
-                    // Intentional sleep between scans (tick-based delay)
-                    Thread.sleep(Math.max(50L, scanDelay.get() * 50L));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE, "Unexpected error in cave scan thread", e);
+    // Forgets the volumes of the previous range that are outside the new one, so coming back evaluates them again
+    private void retireVolumes(int startX, int startY, int startZ, int endX, int endY, int endZ, int step) {
+        if (rangeStart != null) {
+            for (int x = rangeStart.getX(); x <= rangeEnd.getX(); x += step) {
+                for (int z = rangeStart.getZ(); z <= rangeEnd.getZ(); z += step) {
+                    if (x < startX || x > endX || z < startZ || z > endZ) {
+                        for (int y = rangeStart.getY(); y <= rangeEnd.getY(); y += step) volumeCache.invalidate(x, y, z);
+                        continue;
+                    }
+                    // Columns still in range only lose the layers below and above it
+                    for (int y = rangeStart.getY(); y <= rangeEnd.getY() && y < startY; y += step) volumeCache.invalidate(x, y, z);
+                    for (int y = Math.max(rangeStart.getY(), (Math.floorDiv(endY, step) + 1) * step); y <= rangeEnd.getY(); y += step) {
+                        volumeCache.invalidate(x, y, z);
+                    }
                 }
             }
-        }, "BigCavesFinder-ScanThread");
+        }
+        rangeStart = new BlockPos(startX, startY, startZ);
+        rangeEnd = new BlockPos(endX, endY, endZ);
+    }
 
-        scanThread.setDaemon(true);
-        scanThread.start();
+    private long playerCell() {
+        int step = volumeStep;
+        if (step <= 0 || mc.player == null) return 0;
+        BlockPos pos = mc.player.getBlockPos();
+        return PackedPos.pack(Math.floorDiv(pos.getX(), step), Math.floorDiv(pos.getY(), step), Math.floorDiv(pos.getZ(), step));
     }
 
-    private long volumeKey(BlockPos pos) {
-        long x = pos.getX();
-        long y = pos.getY();
-        long z = pos.getZ();
-        return (x & 0x1FFFFFL) | ((y & 0xFFFFFL) << 21) | ((z & 0x1FFFFF) << 41);
+    // Follows the player across servers and dimensions, restoring the loaded chunks whenever it switches
+    private void openStore() {
+        Path directory = ScanStore.locate(mc);
+        if (store != null && store.getDirectory().equals(directory)) return;
+
+        closeStore();
+        if (directory == null) return;
+        store = ScanStore.open(directory, "caves");
+        queueLoadedChunks();
     }
 
-    private boolean isColumnChunksReady(int blockX, int blockZ, int size) {
-        if (mc.world == null) return false;
-        int startChunkX = blockX >> 4;
-        int endChunkX = (blockX + size) >> 4;
-        int startChunkZ = blockZ >> 4;
-        int endChunkZ = (blockZ + size) >> 4;
+    private void closeStore() {
+        if (store != null) store.close();
+        store = null;
+    }
 
-        for (int cx = startChunkX; cx <= endChunkX; cx++) {
-            for (int cz = startChunkZ; cz <= endChunkZ; cz++) {
-                if (mc.world.getChunk(cx, cz) instanceof EmptyChunk) return false;
+    private void queueLoadedChunks() {
+        if (mc.player == null) return;
+        BlockPos playerPos = mc.player.getBlockPos();
+        int radius = (Math.min(scanRadius.get(), 128) >> 4) + 1;
+        for (int cx = (playerPos.getX() >> 4) - radius; cx <= (playerPos.getX() >> 4) + radius; cx++) {
+            for (int cz = (playerPos.getZ() >> 4) - radius; cz <= (playerPos.getZ() >> 4) + radius; cz++) {
+                pendingRestore.add(ChunkSnapshot.key(cx, cz));
             }
         }
-        return true;
     }
 
-    private boolean quickAirEstimate(BlockPos origin, int size) {
-        if (mc.world == null) return false;
-        int samples = 12;
-        int air = 0;
-        Random rnd = new Random(volumeKey(origin));
-        for (int i = 0; i < samples; i++) {
-            if (mc.world.getBlockState(origin.add(rnd.nextInt(size), rnd.nextInt(size), rnd.nextInt(size))).isAir()) {
-                air++;
+    /**
+     * Brings back the volumes stored for chunks that arrived, as long as the sections under them still hash
+     * the same and the settings match. Restored volumes count as evaluated now and are re-checked after the
+     * usual TTL.
+     */
+    private void restoreChunks(int fingerprint, int step, int startX, int startY, int startZ, int endX, int endY, int endZ) throws InterruptedException {
+        if (pendingRestore.isEmpty()) return;
+        if (store == null) {
+            pendingRestore.clear();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<BlockPos> origins = new ArrayList<>();
+        List<AirComponents.Component> found = new ArrayList<>();
+        for (Iterator<Long> it = pendingRestore.iterator(); it.hasNext(); ) {
+            session.checkpoint();
+            long key = it.next();
+            it.remove();
+            int cx = ChunkSnapshot.keyX(key), cz = ChunkSnapshot.keyZ(key);
+            if ((cx << 4) + 15 < startX || cx << 4 > endX || (cz << 4) + 15 < startZ || cz << 4 > endZ) continue;
+
+            ByteBuffer record = store.read(cx, cz);
+            if (record == null || record.remaining() < 16) continue;
+            long hash = record.getLong();
+            if (record.getInt() != fingerprint) continue;
+
+            origins.clear();
+            found.clear();
+            int count = record.getInt();
+            for (int i = 0; i < count && record.remaining() >= 5; i++) {
+                int local = record.getInt();
+                byte flags = record.get();
+                AirComponents.Component cave = null;
+                if ((flags & 1) != 0) {
+                    if (record.remaining() < 36) break;
+                    long id = record.getLong();
+                    int size = record.getInt();
+                    cave = AirComponents.Component.summary(id, size, (flags & 2) != 0,
+                        record.getInt(), record.getInt(), record.getInt(), record.getInt(), record.getInt(), record.getInt());
+                }
+                origins.add(new BlockPos(cx << 4 | local & 15, local >> 8, cz << 4 | local >> 4 & 15));
+                found.add(cave);
+            }
+            // Against a fresh copy, the chunk only just arrived
+            if (origins.isEmpty() || hash != volumesHash(null, cx, cz, origins, step)) continue;
+
+            for (int i = 0; i < origins.size(); i++) {
+                BlockPos origin = origins.get(i);
+                if (origin.getX() < startX || origin.getX() > endX
+                    || origin.getY() < startY || origin.getY() > endY
+                    || origin.getZ() < startZ || origin.getZ() > endZ) continue;
+                if (volumeCache.isFresh(origin.getX(), origin.getY(), origin.getZ(), now)) continue;
+
+                volumeCache.put(origin.getX(), origin.getY(), origin.getZ(), now);
+                AirComponents.Component cave = found.get(i);
+                if (cave != null) {
+                    caves.putIfAbsent(cave.getId(), cave);
+                    addCave(origin, cave);
+                }
             }
         }
-        return air * 5 >= samples;
-    }
-
-    private int countAirWithEarlyExit(BlockPos origin, int size, int threshold) {
-        if (mc.world == null) return 0;
-        int air = 0;
-        int remaining = size * size * size;
-        for (int x = 0; x < size; x++) {
-            for (int y = 0; y < size; y++) {
-                for (int z = 0; z < size; z++) {
-                    if (mc.world.getBlockState(origin.add(x, y, z)).isAir()) air++;
-                    remaining--;
-                    if (air + remaining < threshold) return air;
+    }
+
+    /**
+     * Writes every chunk with volumes evaluated during the pass, one entry per fresh volume whose origin is
+     * in the chunk. The hash covers the sections of the chunk those volumes span, taken from the pass snapshot
+     * where it holds them. Record: content hash, settings fingerprint, entry count, then per entry the origin,
+     * flags (1 cave, 2 truncated) and for caves the id, size and bounding box of the component.
+     */
+    private void saveChunks(WorldSnapshot world, int fingerprint, int step) throws InterruptedException {
+        if (unsavedChunks.isEmpty()) return;
+        if (store == null) {
+            unsavedChunks.clear();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int bottomY = Math.floorDiv(mc.world.getBottomY(), step) * step;
+        int topY = mc.world.getTopYInclusive();
+        List<BlockPos> origins = new ArrayList<>();
+        for (Iterator<Long> it = unsavedChunks.iterator(); it.hasNext(); ) {
+            long key = it.next();
+            it.remove();
+            int cx = ChunkSnapshot.keyX(key), cz = ChunkSnapshot.keyZ(key);
+
+            ByteBuffer entries = ByteBuffer.allocate(1024);
+            origins.clear();
+            // Volume origins on the grid that fall inside this chunk
+            for (int x = Math.floorDiv((cx << 4) + step - 1, step) * step; x <= (cx << 4) + 15; x += step) {
+                for (int z = Math.floorDiv((cz << 4) + step - 1, step) * step; z <= (cz << 4) + 15; z += step) {
+                    for (int y = bottomY; y <= topY; y += step) {
+                        BlockPos origin = new BlockPos(x, y, z);
+                        if (!volumeCache.isFresh(x, y, z, now)) continue;
+
+                        Long caveId = volumeCaves.get(origin);
+                        AirComponents.Component cave = caveId != null ? caves.get(caveId) : null;
+                        if (entries.remaining() < 41) entries = ByteBuffer.allocate(entries.capacity() * 2).put(entries.flip());
+
+                        entries.putInt(y << 8 | (z & 15) << 4 | x & 15);
+                        if (cave == null) {
+                            entries.put((byte) 0);
+                        } else {
+                            entries.put((byte) (cave.isTruncated() ? 3 : 1));
+                            entries.putLong(cave.getId()).putInt(cave.getSize());
+                            entries.putInt(cave.getMinX()).putInt(cave.getMinY()).putInt(cave.getMinZ());
+                            entries.putInt(cave.getMaxX()).putInt(cave.getMaxY()).putInt(cave.getMaxZ());
+                        }
+                        origins.add(origin);
+                    }
                 }
             }
+
+            // An empty record only replaces an outdated one, restoring it brings nothing back
+            long hash = origins.isEmpty() ? 0 : volumesHash(world, cx, cz, origins, step);
+            if (!origins.isEmpty() && hash == 0) continue;
+
+            ByteBuffer record = ByteBuffer.allocate(16 + entries.position());
+            record.putLong(hash).putInt(fingerprint).putInt(origins.size()).put(entries.flip());
+            store.write(cx, cz, record.flip());
+        }
+    }
+
+    // Hash of the sections of the chunk the volumes span; 0 when the chunk is not loaded
+    private long volumesHash(WorldSnapshot world, int cx, int cz, List<BlockPos> origins, int step) throws InterruptedException {
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (BlockPos origin : origins) {
+            minY = Math.min(minY, origin.getY());
+            maxY = Math.max(maxY, origin.getY() + step - 1);
+        }
+        return blocks.contentHash(world, cx, cz, minY >> 4, maxY >> 4);
+    }
+
+    // Runs on the scan workers: cheap filters that decide whether the volume needs a flood fill
+    private boolean isCandidate(WorldSnapshot world, BlockPos origin, int step) {
+        // Not marked evaluated, so it is evaluated again once its chunks arrive
+        if (!isColumnChunksReady(world, origin.getX(), origin.getZ(), step)) {
+            removeCave(origin);
+            return false;
+        }
+        if (passesAirChecks(world, origin, step)) return true;
+
+        removeCave(origin);
+        markEvaluated(origin);
+        return false;
+    }
+
+    // Only once the volume's result is stored, so a slice that fails before labeling it leaves it due
+    private void markEvaluated(BlockPos origin) {
+        session.publish(() -> {
+            volumeCache.put(origin.getX(), origin.getY(), origin.getZ(), System.currentTimeMillis());
+            unsavedChunks.add(ChunkSnapshot.key(origin.getX() >> 4, origin.getZ() >> 4));
+        });
+    }
+
+    // A volume with open sky or water over any column at its center height is surface, dropped before any
+    // block is read
+    private boolean passesAirChecks(WorldSnapshot world, BlockPos origin, int step) {
+        ScanStats.get().caves.blocksRead.add((long) step * step * step);
+        return AirKernels.isCaveVolume(world, origin.getX(), origin.getY(), origin.getZ(), step, caveThreshold.get());
+    }
+
+    /**
+     * Returns the known cave of a neighbouring volume if a fill through the two volumes alone connects their
+     * centers. The neighbour's cave must not be up for labeling in this pass, so only caves that changed, and
+     * volumes next to none, are flooded again.
+     */
+    private AirComponents.Component attachCave(WorldSnapshot world, BlockPos origin, int step, Set<Long> relabeled) {
+        int half = step / 2;
+        int x = origin.getX() + half, y = origin.getY() + half, z = origin.getZ() + half;
+        if (!world.isAir(x, y, z)) return null;
+
+        for (Direction direction : Direction.values()) {
+            BlockPos neighbour = origin.offset(direction, step);
+            Long id = volumeCaves.get(neighbour);
+            if (id == null || relabeled.contains(id)) continue;
+            AirComponents.Component cave = caves.get(id);
+            if (cave == null) continue;
+
+            int minX = Math.min(origin.getX(), neighbour.getX()), maxX = Math.max(origin.getX(), neighbour.getX()) + step - 1;
+            int minY = Math.min(origin.getY(), neighbour.getY()), maxY = Math.max(origin.getY(), neighbour.getY()) + step - 1;
+            int minZ = Math.min(origin.getZ(), neighbour.getZ()), maxZ = Math.max(origin.getZ(), neighbour.getZ()) + step - 1;
+            attachFill.setBounds(minX, minY, minZ, maxX, maxY, maxZ);
+            attachFill.beginRetaining();
+            try {
+                attachFill.countConnectedAir(world, x, y, z, 2 * step * step * step);
+                if (attachFill.isVisited(neighbour.getX() + half, neighbour.getY() + half, neighbour.getZ() + half)) return cave;
+            } finally {
+                attachFill.endRetaining();
+            }
         }
-        return air;
-    }
-
-    private int countConnectedAirBounded(BlockPos start, BlockPos playerPos, int nodeLimit) {
-        if (mc.world == null || !mc.world.getBlockState(start).isAir()) return 0;
-
-        Set<BlockPos> visited = new HashSet<>();
-        ArrayDeque<BlockPos> queue = new ArrayDeque<>();
-        visited.add(start);
-        queue.add(start);
-        int count = 0;
-        long radiusSq = (long) scanRadius.get() * scanRadius.get();
-
-        while (!queue.isEmpty()) {
-            BlockPos pos = queue.poll();
-            count++;
-            if (count >= nodeLimit) return count;
-
-            for (Direction dir : Direction.values()) {
-                BlockPos next = pos.offset(dir);
-                if (next.getSquaredDistance(playerPos) > radiusSq) continue;
-                if (!visited.add(next)) continue;
-                if (mc.world.getChunk(next.getX() >> 4, next.getZ() >> 4) instanceof EmptyChunk) continue;
-                if (!mc.world.getBlockState(next).isAir()) continue;
-                queue.add(next);
+        return null;
+    }
+
+    // Returns the large air component through the center of the volume, if there is one; min-connected-air
+    // is a size lookup once the component has been labeled
+    private AirComponents.Component labelCave(WorldSnapshot world, BlockPos origin, int floodLimit) {
+        return components.caveAtCenter(world, origin.getX(), origin.getY(), origin.getZ(), floodLimit, minCaveSize.get());
+    }
+
+    // Scanners that work inside caves hear about new volumes on the next tick instead of polling foundCaves.
+    // Caves of a session that ended are dropped.
+    private void addCave(BlockPos origin, AirComponents.Component cave) {
+        session.publish(() -> {
+            volumeCaves.put(origin, cave.getId());
+            if (!foundCaves.add(origin)) return;
+            cavesVersion.incrementAndGet();
+            pendingFound.add(origin);
+        });
+    }
+
+    private void removeCave(BlockPos origin) {
+        session.publish(() -> {
+            if (foundCaves.remove(origin)) cavesVersion.incrementAndGet();
+            volumeCaves.remove(origin);
+        });
+    }
+
+    private void clearCaves() {
+        foundCaves.clear();
+        pendingFound.clear();
+        cavesVersion.incrementAndGet();
+        volumeCaves.clear();
+        caves.clear();
+        caveMeshes = NO_MESHES;
+    }
+
+    private boolean isColumnChunksReady(WorldSnapshot world, int blockX, int blockZ, int size) {
+        int startChunkX = blockX >> 4;
+        int endChunkX = (blockX + size) >> 4;
+        int startChunkZ = blockZ >> 4;
+        int endChunkZ = (blockZ + size) >> 4;
+
+        for (int cx = startChunkX; cx <= endChunkX; cx++) {
+            for (int cz = startChunkZ; cz <= endChunkZ; cz++) {
+                if (!world.isChunkLoaded(cx, cz)) return false;
             }
         }
-        return count;
+        return true;
     }
 
     @Override
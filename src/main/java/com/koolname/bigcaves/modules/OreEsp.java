@@ -1,36 +1,63 @@
 package com.koolname.bigcaves.modules;
 
+import com.koolname.bigcaves.events.BlockChangedEvent;
+import com.koolname.bigcaves.events.CaveFoundEvent;
+import com.koolname.bigcaves.events.ChunkLoadedEvent;
+import com.koolname.bigcaves.events.ChunkUnloadedEvent;
+import com.koolname.bigcaves.render.LodRenderer;
+import com.koolname.bigcaves.render.OreVisibility;
+import com.koolname.bigcaves.scan.BlockSource;
+import com.koolname.bigcaves.scan.ChunkIndex;
+import com.koolname.bigcaves.scan.ChunkSnapshot;
+import com.koolname.bigcaves.scan.OreKernels;
+import com.koolname.bigcaves.scan.OreVein;
+import com.koolname.bigcaves.scan.ScanExecutor;
+import com.koolname.bigcaves.scan.ScanPipeline;
+import com.koolname.bigcaves.scan.ScanScheduler;
+import com.koolname.bigcaves.scan.ScanSession;
+import com.koolname.bigcaves.scan.ScanThrottle;
+import com.koolname.bigcaves.scan.PackedPos;
+import com.koolname.bigcaves.scan.SectionSnapshot;
+import com.koolname.bigcaves.scan.SnapshotCapture;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import com.koolname.bigcaves.scan.WorldTracker;
+import com.koolname.bigcaves.stats.RenderFrameEvent;
+import com.koolname.bigcaves.stats.ScanStats;
+import com.koolname.bigcaves.store.ScanStore;
 import meteordevelopment.meteorclient.events.render.Render3DEvent;
+import meteordevelopment.meteorclient.events.world.TickEvent;
 import meteordevelopment.meteorclient.renderer.ShapeMode;
 import meteordevelopment.meteorclient.settings.*;
 import meteordevelopment.meteorclient.systems.modules.Module;
 import meteordevelopment.meteorclient.systems.modules.Modules;
 import meteordevelopment.meteorclient.utils.render.color.SettingColor;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import meteordevelopment.orbit.EventHandler;
 import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
-import net.minecraft.util.hit.BlockHitResult;
-import net.minecraft.util.hit.HitResult;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
-import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.RaycastContext;
-import net.minecraft.world.chunk.Chunk;
-import net.minecraft.world.chunk.EmptyChunk;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OreEsp extends Module {
-    private static final Logger LOGGER = Logger.getLogger(OreEsp.class.getName());
+    // At most one chat message per interval, veins found in between are summed up in the next one
+    private static final long NOTIFY_INTERVAL_MILLIS = 3000;
+    private static final int MAX_REMEMBERED_VEINS = 4096;
 
     public enum ScanMode { BigCaves, AroundPlayer, Both }
 
     private final SettingGroup sgGeneral = settings.getDefaultGroup();
     private final SettingGroup sgScan = settings.createGroup("Scan");
     private final SettingGroup sgRender = settings.createGroup("Render");
+    private final SettingGroup sgPerformance = settings.createGroup("Performance");
 
     private final Setting<ScanMode> scanMode = sgScan.add(new EnumSetting.Builder<ScanMode>()
         .name("scan-mode")
@@ -50,7 +77,7 @@ public class OreEsp extends Module {
 
     private final Setting<Integer> despawnDistance = sgScan.add(new IntSetting.Builder()
         .name("despawn-distance")
-        .description("Distance at which ore ESP will disappear.")
+        .description("Horizontal distance to a chunk at which its ore ESP will disappear. Height is not counted.")
         .defaultValue(100)
         .min(32).sliderMax(256)
         .build()
@@ -58,7 +85,7 @@ public class OreEsp extends Module {
 
     private final Setting<Integer> scanDelay = sgScan.add(new IntSetting.Builder()
         .name("scan-delay-ticks")
-        .description("Delay in ticks between scans.")
+        .description("Least delay in ticks between scans; the throttle stretches it while the game is busy.")
         .defaultValue(40)
         .min(20).sliderMax(400)
         .build()
@@ -99,15 +126,74 @@ public class OreEsp extends Module {
         .build()
     );
 
+    private final Setting<Integer> detailDistance = sgRender.add(new IntSetting.Builder()
+        .name("detail-distance")
+        .description("Veins farther away than this are drawn as a single box.")
+        .defaultValue(48)
+        .min(0).sliderMax(256)
+        .build()
+    );
+
+    private final Setting<Integer> minScreenSize = sgRender.add(new IntSetting.Builder()
+        .name("min-screen-size")
+        .description("Veins smaller than this many pixels on screen are not drawn. 0 draws every vein.")
+        .defaultValue(2)
+        .min(0).sliderMax(16)
+        .build()
+    );
+
+    private final ScanPerformance performance = new ScanPerformance(this, sgPerformance);
+
     private BigCavesFinder bigCavesFinder;
-    private Thread scanThread;
+    private final ScanPipeline pipeline = ScanPipeline.get();
+    private final ScanThrottle throttle = ScanThrottle.get();
+    private final OreStage stage = new OreStage();
+    // Restored veins are grouped before the pass, from their own small snapshot
+    private final BlockSource blocks = SnapshotCapture.CLIENT;
+    private final ScanScheduler scheduler = new ScanScheduler(20);
+    private BitSet targetStates = new BitSet();
+    // Session of the running pass, and the one the scan state below belongs to
+    private ScanSession session;
+    private ScanSession scannedSession;
 
-    private final Set<BlockPos> exposedOres = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private final Set<BlockPos> scannedCaveAreas = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // Every block of every vein, kept per chunk; a block belongs to the vein whose walk claimed it first
+    private final ChunkIndex exposedOres = new ChunkIndex();
+    // Cleanup, visibility and rendering work per vein
+    private final Map<Long, OreVein> veins = new ConcurrentHashMap<>();
+    private final AtomicLong nextVeinId = new AtomicLong();
+    private final ChunkIndex scannedCaveAreas = new ChunkIndex();
+    // Cave volumes announced by the cave finder and not scanned yet, by low corner
+    private final ChunkIndex pendingCaveAreas = new ChunkIndex();
+    // Chunks with block changes whose ores have to be checked again
+    private final Set<Long> dirtyOreChunks = ConcurrentHashMap.newKeySet();
+    // Sections that were fully inside the player scan radius when scanned and have not changed since
+    private final Set<Long> scannedSections = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirtySections = ConcurrentHashMap.newKeySet();
+    // Section the player stood in when the last pass started; entering another one brings new sections into range
+    private volatile long passSection;
+    // Lowest section of the world, bit 0 of the scanned section mask in stored records
+    private int bottomSection;
 
-    private final Map<BlockPos, Long> visibleCacheTimestamps = new ConcurrentHashMap<>();
-    private final Map<BlockPos, Boolean> visibleCache = new ConcurrentHashMap<>();
-    private final long visibilityCacheMillis = 2500; // Cache raycast results for 2.5s
+    // Results of earlier sessions; only touched by the scan thread
+    private ScanStore store;
+    private final Set<Long> pendingRestore = ConcurrentHashMap.newKeySet();
+    private final Set<Long> unsavedChunks = ConcurrentHashMap.newKeySet();
+
+    // Veins waiting for a chat message, and the low corner of every vein announced so far
+    private final List<OreVein> pendingNotifications = new ArrayList<>();
+    private final Set<Long> announcedVeins = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_REMEMBERED_VEINS;
+        }
+    });
+    private long lastNotification;
+
+    private final OreVisibility visibility = new OreVisibility(veins.values());
+    // Mesh of every vein in the last visibility result, by result index; veins are immutable, so meshes of
+    // veins that carried over to a new result are reused
+    private OreVisibility.Result drawnResult = OreVisibility.Result.EMPTY;
+    private final LodRenderer lod = new LodRenderer();
 
     public OreEsp() {
         super(com.koolname.bigcaves.BigCavesAddon.CATEGORY, "ore-esp", "Finds and highlights exposed ores (optimized).");
@@ -125,219 +211,843 @@ public class OreEsp extends Module {
     @Override
     public void onActivate() {
         bigCavesFinder = Modules.get().get(BigCavesFinder.class);
-        exposedOres.clear();
+        clearOres();
         scannedCaveAreas.clear();
-        visibleCache.clear();
-        visibleCacheTimestamps.clear();
-        startScanThread();
+        scannedSections.clear();
+        dirtySections.clear();
+        dirtyOreChunks.clear();
+        pendingRestore.clear();
+        unsavedChunks.clear();
+        pendingCaveAreas.clear();
+        queueKnownCaves();
+        performance.apply();
+        pipeline.register(stage, BigCavesFinder.PIPELINE_ORDER + 1);
+        visibility.start();
     }
 
     @Override
     public void onDeactivate() {
-        exposedOres.clear();
+        pipeline.unregister(stage);
+        scannedSession = null;
+        clearOres();
         scannedCaveAreas.clear();
-        visibleCache.clear();
-        visibleCacheTimestamps.clear();
-        if (scanThread != null && scanThread.isAlive()) {
-            scanThread.interrupt();
+        pendingCaveAreas.clear();
+        scannedSections.clear();
+        dirtySections.clear();
+        dirtyOreChunks.clear();
+        pendingRestore.clear();
+        unsavedChunks.clear();
+        visibility.stop();
+        ScanStats.get().setOreRender(0, 0);
+        performance.release();
+    }
+
+    @EventHandler
+    private void onBlockChanged(BlockChangedEvent event) {
+        // Neighbouring sections too, the change may expose or cover an ore across the border
+        for (Direction direction : Direction.values()) {
+            int x = event.x + direction.getOffsetX();
+            int y = event.y + direction.getOffsetY();
+            int z = event.z + direction.getOffsetZ();
+            dirtySections.add(SectionSnapshot.key(x >> 4, y >> 4, z >> 4));
         }
+        dirtySections.add(SectionSnapshot.key(event.x >> 4, event.y >> 4, event.z >> 4));
+        dirtyOreChunks.add(ChunkSnapshot.key(event.x >> 4, event.z >> 4));
+        pipeline.signal();
     }
 
+    // Queued whatever the scan mode, so switching to a cave mode later still finds them
     @EventHandler
-    private void onRender(Render3DEvent event) {
-        if (espColor.get().a == 0 && visibleColor.get().a == 0) return;
+    private void onCaveFound(CaveFoundEvent event) {
+        pendingCaveAreas.add(event.x, event.y, event.z);
+    }
+
+    @EventHandler
+    private void onTick(TickEvent.Post event) {
+        if (mc.player != null && scanMode.get() != ScanMode.BigCaves && playerSection() != passSection) pipeline.signal();
+    }
 
-        for (BlockPos pos : exposedOres) {
-            SettingColor colorToRender = isOreVisibleCached(pos) ? visibleColor.get() : espColor.get();
-            if (colorToRender.a > 0) {
-                event.renderer.box(pos, colorToRender, colorToRender, shapeMode.get(), 0);
+    @EventHandler
+    private void onChunkLoaded(ChunkLoadedEvent event) {
+        if (mc.world == null) return;
+        // The new chunk and the borders of its neighbours
+        for (int sy = mc.world.getBottomY() >> 4; sy <= mc.world.getTopYInclusive() >> 4; sy++) {
+            dirtySections.add(SectionSnapshot.key(event.chunkX, sy, event.chunkZ));
+            dirtySections.add(SectionSnapshot.key(event.chunkX - 1, sy, event.chunkZ));
+            dirtySections.add(SectionSnapshot.key(event.chunkX + 1, sy, event.chunkZ));
+            dirtySections.add(SectionSnapshot.key(event.chunkX, sy, event.chunkZ - 1));
+            dirtySections.add(SectionSnapshot.key(event.chunkX, sy, event.chunkZ + 1));
+        }
+        pendingRestore.add(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+        pipeline.signal();
+    }
+
+    @EventHandler
+    private void onChunkUnloaded(ChunkUnloadedEvent event) {
+        boolean dropped = false;
+        for (OreVein vein : veins.values()) {
+            if (!vein.intersectsChunk(event.chunkX, event.chunkZ)) continue;
+            dropVein(vein);
+            dropped = true;
+            // Parts of the vein in chunks that stay are found again by rescanning their sections
+            for (int i = 0; i < vein.size(); i++) {
+                long member = vein.member(i);
+                if (PackedPos.x(member) >> 4 == event.chunkX && PackedPos.z(member) >> 4 == event.chunkZ) continue;
+                dirtySections.add(SectionSnapshot.key(PackedPos.x(member) >> 4, PackedPos.y(member) >> 4, PackedPos.z(member) >> 4));
             }
         }
+        exposedOres.removeChunk(event.chunkX, event.chunkZ);
+        if (dropped) visibility.signal();
+        // Cave areas of the chunk are scanned again once it is back
+        for (long area : scannedCaveAreas.getChunk(event.chunkX, event.chunkZ)) {
+            pendingCaveAreas.add(PackedPos.x(area), PackedPos.y(area), PackedPos.z(area));
+        }
+        scannedCaveAreas.removeChunk(event.chunkX, event.chunkZ);
+        dirtyOreChunks.remove(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+        pendingRestore.remove(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+        unsavedChunks.remove(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+        if (mc.world == null) return;
+        for (int sy = mc.world.getBottomY() >> 4; sy <= mc.world.getTopYInclusive() >> 4; sy++) {
+            scannedSections.remove(SectionSnapshot.key(event.chunkX, sy, event.chunkZ));
+        }
     }
 
-    private boolean isOreVisibleCached(BlockPos orePos) {
-        if (mc.world == null || mc.player == null) return false;
+    @EventHandler
+    private void onRender(Render3DEvent event) {
+        // Veins of the last world until the new session starts
+        if (espColor.get().a == 0 && visibleColor.get().a == 0 || pipeline.session().getWorld() != mc.world) {
+            ScanStats.get().setOreRender(0, 0);
+            return;
+        }
+
+        RenderFrameEvent frame = RenderFrameEvent.isTypeEnabled() ? new RenderFrameEvent() : null;
+        if (frame != null) frame.begin();
 
-        long now = System.currentTimeMillis();
-        Long stamp = visibleCacheTimestamps.get(orePos);
-        if (stamp != null && (now - stamp) < visibilityCacheMillis) {
-            Boolean cached = visibleCache.get(orePos);
-            if (cached != null) return cached;
-        }
-
-        boolean visible = isOreVisible(orePos);
-        visibleCache.put(orePos, visible);
-        visibleCacheTimestamps.put(orePos, now);
-        return visible;
-    }
-
-    private boolean isOreVisible(BlockPos orePos) {
-        if (mc.world == null || mc.player == null) return false;
-
-        Vec3d cameraPos = mc.gameRenderer.getCamera().getPos();
-        RaycastContext context = new RaycastContext(
-            cameraPos,
-            Vec3d.ofCenter(orePos),
-            RaycastContext.ShapeType.COLLIDER,
-            RaycastContext.FluidHandling.NONE,
-            mc.player
-        );
-
-        BlockHitResult hitResult = mc.world.raycast(context);
-        return hitResult.getType() == HitResult.Type.MISS || hitResult.getBlockPos().equals(orePos);
-    }
-
-    private void startScanThread() {
-        scanThread = new Thread(() -> {
-            while (isActive() && mc.world != null && mc.player != null) {
-                try {
-                    cleanupOres();
-
-                    ScanMode mode = scanMode.get();
-                    if (mode == ScanMode.BigCaves || mode == ScanMode.Both) scanBigCaves();
-                    if (mode == ScanMode.AroundPlayer || mode == ScanMode.Both) scanAroundPlayer();
-
-                    // Intentional sleep between scans (tick-based delay)
-                    Thread.sleep(Math.max(50L, scanDelay.get() * 50L));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE, "Unexpected error in ore scan thread", e);
+        // Meshes come built with the result, the frame only walks its arrays
+        OreVisibility.Result result = visibility.get();
+        boolean rebuilt = result != drawnResult;
+        drawnResult = result;
+
+        SettingColor hiddenColor = espColor.get(), seenColor = visibleColor.get();
+        ShapeMode mode = shapeMode.get();
+        lod.begin(detailDistance.get(), minScreenSize.get());
+        for (int i = 0; i < result.size(); i++) {
+            SettingColor color = result.isVisible(i) ? seenColor : hiddenColor;
+            lod.render(event.renderer, result.mesh(i), color, color, mode);
+        }
+
+        int quads = lod.getQuads();
+        int lines = lod.getLines();
+        ScanStats.get().setOreRender(quads, lines);
+        if (frame != null && frame.shouldCommit()) {
+            frame.module = name;
+            frame.quads = quads;
+            frame.lines = lines;
+            frame.rebuilt = rebuilt;
+            frame.commit();
+        }
+    }
+
+    private boolean claimOre(int x, int y, int z) {
+        if (!exposedOres.add(x, y, z)) return false;
+        unsavedChunks.add(ChunkSnapshot.key(x >> 4, z >> 4));
+        return true;
+    }
+
+    /**
+     * Walks the vein of an exposed ore nobody claimed yet and registers it. The walk only reads the snapshot
+     * and skips claimed blocks; the claims and the vein go in together in one short publish. Another worker
+     * may have walked the same vein from a different block meanwhile, whoever claims a block first keeps it.
+     */
+    private void addVein(WorldSnapshot world, int x, int y, int z, int stateId) {
+        if (exposedOres.contains(x, y, z)) return;
+
+        Block oreType = Block.getStateFromRawId(stateId).getBlock();
+        LongOpenHashSet walked = new LongOpenHashSet();
+        LongArrayList members = new LongArrayList();
+        walked.add(PackedPos.pack(x, y, z));
+        members.add(PackedPos.pack(x, y, z));
+        OreKernels.findVein(world, x, y, z, id -> Block.getStateFromRawId(id).getBlock() == oreType, (mx, my, mz) -> {
+            long member = PackedPos.pack(mx, my, mz);
+            if (exposedOres.contains(mx, my, mz) || !walked.add(member)) return false;
+            members.add(member);
+            return true;
+        });
+        int faces = exposedFaces(world, members);
+
+        // Claims and veins of a session that ended stay out
+        session.publish(() -> {
+            LongArrayList claimed = new LongArrayList(members.size());
+            for (int i = 0; i < members.size(); i++) {
+                long member = members.getLong(i);
+                if (claimOre(PackedPos.x(member), PackedPos.y(member), PackedPos.z(member))) claimed.add(member);
+            }
+            if (claimed.isEmpty()) return;
+
+            int claimedFaces = claimed.size() == members.size() ? faces : exposedFaces(world, claimed);
+            OreVein vein = new OreVein(nextVeinId.incrementAndGet(), stateId, claimed.toLongArray(), claimedFaces);
+            veins.put(vein.getId(), vein);
+            visibility.signal();
+            if (sendChatMessage.get()) {
+                synchronized (pendingNotifications) {
+                    pendingNotifications.add(vein);
                 }
             }
-        }, "OreEsp-ScanThread");
+        });
+    }
 
-        scanThread.setDaemon(true);
-        scanThread.start();
+    private static int exposedFaces(WorldSnapshot world, LongArrayList members) {
+        int faces = 0;
+        for (int i = 0; i < members.size(); i++) {
+            long member = members.getLong(i);
+            faces += OreKernels.exposedFaces(world, PackedPos.x(member), PackedPos.y(member), PackedPos.z(member));
+        }
+        return faces;
     }
 
-    private void cleanupOres() {
-        if (mc.world == null || mc.player == null) return;
-        long despawnDistSq = (long) despawnDistance.get() * despawnDistance.get();
+    // Releases the blocks of the vein; its record on disk stays and is restored with the chunk
+    private void dropVein(OreVein vein) {
+        if (!veins.remove(vein.getId(), vein)) return;
+        for (int i = 0; i < vein.size(); i++) {
+            long member = vein.member(i);
+            exposedOres.remove(PackedPos.x(member), PackedPos.y(member), PackedPos.z(member));
+        }
+    }
+
+    private void clearOres() {
+        veins.clear();
+        exposedOres.clear();
+        synchronized (pendingNotifications) {
+            pendingNotifications.clear();
+        }
+    }
+
+    // The ore scanner's part of every pipeline pass, after the cave finder's
+    private class OreStage implements ScanPipeline.Stage {
+        private boolean caves, around;
+        private LongArrayList columns;
+
+        @Override
+        public ScanPipeline.Region prepare() throws InterruptedException {
+            if (!isActive() || mc.world == null || mc.player == null) return null;
+            session = pipeline.session();
+            if (session.getWorld() != mc.world) return null;
+
+            performance.apply();
+            bottomSection = mc.world.getBottomSectionCoord();
+            openStore();
+            ScanStats.get().ores.setQueueDepth(dirtySections.size() + dirtyOreChunks.size() + pendingRestore.size());
+
+            BitSet targets = buildTargetStates();
+            if (!targets.equals(targetStates) || session != scannedSession) {
+                // Ore list or world changed, everything has to be looked at again
+                targetStates = targets;
+                scannedSession = session;
+                clearOres();
+                scannedSections.clear();
+                scannedCaveAreas.clear();
+                pendingCaveAreas.clear();
+                dirtyOreChunks.clear();
+                unsavedChunks.clear();
+                queueLoadedChunks();
+                queueKnownCaves();
+            }
+            processDirtySections();
+            restoreChunks();
+
+            ScanMode mode = scanMode.get();
+            caves = mode == ScanMode.BigCaves || mode == ScanMode.Both;
+            around = mode == ScanMode.AroundPlayer || mode == ScanMode.Both;
+            passSection = playerSection();
+            columns = around ? pendingColumns() : new LongArrayList();
+            return passRegion(caves, columns);
+        }
+
+        @Override
+        public void scan(WorldSnapshot world) throws InterruptedException {
+            ScanStats.Scanner stats = ScanStats.get().ores;
+            stats.beginPass();
+
+            cleanupOres(world);
+            int units = 0;
+            if (caves) units += scanBigCaves(world);
+            if (around) units += scanAroundPlayer(world, columns);
+            session.checkpoint();
+            saveChunks(world);
+            flushNotifications();
+            stats.setQueueDepth(dirtySections.size() + dirtyOreChunks.size() + pendingRestore.size());
+            stats.endPass(units);
+        }
+
+        // Tick-based delay between scans, stretched by the throttle, unless a chunk or block change arrives first
+        @Override
+        public long delayMillis() {
+            return throttle.delayMillis(Math.max(50L, scanDelay.get() * 50L));
+        }
+
+        @Override
+        public void stopped() {
+            closeStore();
+        }
+
+        @Override
+        public void sessionEnded() {
+            clearOres();
+            pendingCaveAreas.clear();
+            visibility.clear();
+        }
+    }
+
+    // The cave finder only announces caves it finds from now on, the ones it already knows are queued once
+    private void queueKnownCaves() {
+        if (bigCavesFinder == null) return;
+        for (BlockPos area : bigCavesFinder.foundCaves) pendingCaveAreas.add(area.getX(), area.getY(), area.getZ());
+    }
+
+    // Precomputes every block state id of the selected ores so scans never resolve states
+    private BitSet buildTargetStates() {
+        BitSet states = new BitSet();
+        for (Block block : ores.get()) {
+            for (BlockState state : block.getStateManager().getStates()) {
+                states.set(Block.getRawIdFromState(state));
+            }
+        }
+        return states;
+    }
+
+    // Follows the player across servers and dimensions, restoring the loaded chunks whenever it switches
+    private void openStore() {
+        Path directory = ScanStore.locate(mc);
+        if (store != null && store.getDirectory().equals(directory)) return;
 
-        exposedOres.removeIf(pos ->
-            !ores.get().contains(mc.world.getBlockState(pos).getBlock()) ||
-                mc.player.getBlockPos().getSquaredDistance(pos) > despawnDistSq
-        );
+        closeStore();
+        if (directory == null) return;
+        store = ScanStore.open(directory, "ores");
+        queueLoadedChunks();
     }
 
-    private void scanAroundPlayer() {
-        if (mc.world == null || mc.player == null) return;
+    private void closeStore() {
+        if (store != null) store.close();
+        store = null;
+    }
 
+    private void queueLoadedChunks() {
+        if (mc.player == null) return;
+        int radius = (despawnDistance.get() >> 4) + 1;
         BlockPos playerPos = mc.player.getBlockPos();
-        int radius = playerScanRadius.get();
-        int minChunkX = (playerPos.getX() - radius) >> 4;
-        int maxChunkX = (playerPos.getX() + radius) >> 4;
-        int minChunkZ = (playerPos.getZ() - radius) >> 4;
-        int maxChunkZ = (playerPos.getZ() + radius) >> 4;
-
-        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
-            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
-                Chunk chunk = mc.world.getChunk(cx, cz);
-                if (chunk instanceof EmptyChunk) continue;
-
-                int chunkStartX = cx << 4;
-                int chunkStartZ = cz << 4;
-                int yLow = Math.max(mc.world.getDimension().minY(), playerPos.getY() - radius);
-                int yHigh = Math.min(mc.world.getDimension().height() - 1, playerPos.getY() + radius);
-
-                for (int x = chunkStartX; x < chunkStartX + 16; x++) {
-                    for (int z = chunkStartZ; z < chunkStartZ + 16; z++) {
-                        int dx = x - playerPos.getX();
-                        int dz = z - playerPos.getZ();
-                        if (dx * dx + dz * dz > radius * radius) continue;
-
-                        for (int y = yLow; y <= yHigh; y++) {
-                            BlockPos pos = new BlockPos(x, y, z);
-                            Block block = mc.world.getBlockState(pos).getBlock();
-                            if (ores.get().contains(block) && isExposed(pos) && exposedOres.add(pos)) {
-                                findOreVein(pos.toImmutable(), block);
-                            }
-                        }
-                    }
-                }
+        int playerChunkX = playerPos.getX() >> 4, playerChunkZ = playerPos.getZ() >> 4;
+        for (int cx = playerChunkX - radius; cx <= playerChunkX + radius; cx++) {
+            for (int cz = playerChunkZ - radius; cz <= playerChunkZ + radius; cz++) {
+                pendingRestore.add(ChunkSnapshot.key(cx, cz));
             }
         }
     }
 
-    private void scanBigCaves() {
-        if (bigCavesFinder == null || !bigCavesFinder.isActive() || bigCavesFinder.foundCaves.isEmpty()) return;
+    /**
+     * Brings back the ores and scanned sections stored for chunks that arrived, as long as the sections the
+     * record depends on still hash the same and the ore list did not change. Everything else is left to the
+     * regular scans.
+     */
+    private void restoreChunks() throws InterruptedException {
+        if (pendingRestore.isEmpty()) return;
+        if (store == null) {
+            pendingRestore.clear();
+            return;
+        }
+
+        int fingerprint = targetStates.hashCode();
+        BlockPos playerPos = mc.player.getBlockPos();
+        LongOpenHashSet restored = new LongOpenHashSet();
+        for (Iterator<Long> it = pendingRestore.iterator(); it.hasNext(); ) {
+            session.checkpoint();
+            long key = it.next();
+            it.remove();
+            int cx = ChunkSnapshot.keyX(key), cz = ChunkSnapshot.keyZ(key);
+            if (isChunkOutOfRange(cx, cz, playerPos)) continue;
+
+            ByteBuffer record = store.read(cx, cz);
+            if (record == null || record.remaining() < 24) continue;
+            long hash = record.getLong();
+            if (record.getInt() != fingerprint) continue;
+            long scannedMask = record.getLong();
+            int count = record.getInt();
+            if (count < 0 || record.remaining() < count * 4 || count == 0 && scannedMask == 0) continue;
+
+            long[] chunkOres = new long[count];
+            for (int i = 0; i < count; i++) {
+                int local = record.getInt();
+                chunkOres[i] = PackedPos.pack(cx << 4 | local & 15, local >> 8, cz << 4 | local >> 4 & 15);
+            }
+            // Against a fresh copy, the chunk only just arrived
+            long current = recordHash(null, cx, cz, scannedMask, chunkOres);
+            if (current == 0 || current != hash) continue;
 
-        for (BlockPos caveAreaPos : bigCavesFinder.foundCaves) {
-            if (Thread.interrupted()) return;
-            if (scannedCaveAreas.add(caveAreaPos)) {
-                scanAreaForExposedOres(caveAreaPos);
+            // Added directly, the restored chunk is already on disk as it is
+            for (long ore : chunkOres) {
+                if (exposedOres.add(PackedPos.x(ore), PackedPos.y(ore), PackedPos.z(ore))) restored.add(ore);
+            }
+            for (int i = 0; i < 64; i++) {
+                if ((scannedMask >>> i & 1) != 0) scannedSections.add(SectionSnapshot.key(cx, bottomSection + i, cz));
             }
         }
+        if (restored.isEmpty()) return;
+
+        restoreVeins(restored);
+        visibility.signal();
     }
 
-    private void scanAreaForExposedOres(BlockPos areaStartPos) {
-        if (mc.world == null) return;
-        int volumeSize = bigCavesFinder.checkVolumeSize.get();
+    /**
+     * Groups restored blocks into veins the way a walk would, without claiming them again. Records are per
+     * chunk, so a vein crossing into a chunk that was not restored in the same batch comes back in parts.
+     */
+    private void restoreVeins(LongOpenHashSet restored) throws InterruptedException {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (LongIterator it = restored.iterator(); it.hasNext(); ) {
+            long pos = it.nextLong();
+            minX = Math.min(minX, PackedPos.x(pos)); maxX = Math.max(maxX, PackedPos.x(pos));
+            minY = Math.min(minY, PackedPos.y(pos)); maxY = Math.max(maxY, PackedPos.y(pos));
+            minZ = Math.min(minZ, PackedPos.z(pos)); maxZ = Math.max(maxZ, PackedPos.z(pos));
+        }
+        // One block of margin for the exposure counts
+        WorldSnapshot world = blocks.capture((minX - 1) >> 4, (minZ - 1) >> 4, (maxX + 1) >> 4, (maxZ + 1) >> 4, minY - 1, maxY + 1);
 
-        for (int x = 0; x < volumeSize; x++) {
-            for (int y = 0; y < volumeSize; y++) {
-                for (int z = 0; z < volumeSize; z++) {
-                    BlockPos currentPos = areaStartPos.add(x, y, z);
-                    if (mc.world.getChunk(currentPos.getX() >> 4, currentPos.getZ() >> 4) instanceof EmptyChunk) continue;
+        LongOpenHashSet left = new LongOpenHashSet(restored);
+        for (LongIterator it = restored.iterator(); it.hasNext(); ) {
+            long seed = it.nextLong();
+            if (!left.remove(seed)) continue;
 
-                    Block block = mc.world.getBlockState(currentPos).getBlock();
-                    if (ores.get().contains(block) && isExposed(currentPos) && exposedOres.add(currentPos)) {
-                        findOreVein(currentPos.toImmutable(), block);
-                    }
+            int stateId = world.getStateId(PackedPos.x(seed), PackedPos.y(seed), PackedPos.z(seed));
+            Block oreType = stateId >= 0 ? Block.getStateFromRawId(stateId).getBlock() : null;
+            LongArrayList members = new LongArrayList();
+            members.add(seed);
+            OreKernels.findVein(world, PackedPos.x(seed), PackedPos.y(seed), PackedPos.z(seed),
+                id -> Block.getStateFromRawId(id).getBlock() == oreType, (x, y, z) -> {
+                    long pos = PackedPos.pack(x, y, z);
+                    if (!left.remove(pos)) return false;
+                    members.add(pos);
+                    return true;
+                });
+
+            OreVein vein = new OreVein(nextVeinId.incrementAndGet(), stateId, members.toLongArray(), exposedFaces(world, members));
+            if (!session.publish(() -> veins.put(vein.getId(), vein))) return;
+            // Known from the store, not news
+            synchronized (pendingNotifications) {
+                announcedVeins.add(PackedPos.pack(vein.getMinX(), vein.getMinY(), vein.getMinZ()));
+            }
+        }
+    }
+
+    /**
+     * Announces the veins found since the last message, at most once per interval. A vein found again, e.g.
+     * after its chunk was reloaded, is not announced twice.
+     */
+    private void flushNotifications() {
+        long now = System.currentTimeMillis();
+        if (now - lastNotification < NOTIFY_INTERVAL_MILLIS) return;
+
+        List<OreVein> found = new ArrayList<>();
+        synchronized (pendingNotifications) {
+            for (OreVein vein : pendingNotifications) {
+                if (announcedVeins.add(PackedPos.pack(vein.getMinX(), vein.getMinY(), vein.getMinZ()))) found.add(vein);
+            }
+            pendingNotifications.clear();
+        }
+        if (found.isEmpty() || !sendChatMessage.get()) return;
+        lastNotification = now;
+
+        if (found.size() == 1) {
+            OreVein vein = found.get(0);
+            info("Found %s vein of %d at %d, %d, %d.", oreName(vein), vein.size(), vein.getMinX(), vein.getMinY(), vein.getMinZ());
+            return;
+        }
+
+        // One line for the whole batch, counted per ore
+        Map<String, Integer> counts = new TreeMap<>();
+        for (OreVein vein : found) counts.merge(oreName(vein), 1, Integer::sum);
+        StringJoiner summary = new StringJoiner(", ");
+        counts.forEach((name, count) -> summary.add(count + " " + name));
+        info("Found %d ore veins: %s.", found.size(), summary);
+    }
+
+    private static String oreName(OreVein vein) {
+        return Block.getStateFromRawId(vein.getStateId()).getBlock().getName().getString();
+    }
+
+    /**
+     * Writes every chunk whose ores or scanned sections changed during the pass. The hash covers the sections
+     * the record depends on, taken from the pass snapshot where it holds them; a block that changed after the
+     * snapshot also marked the chunk dirty, so it is saved again. Record: content hash, ore list fingerprint,
+     * scanned section mask, ore count, then one int per ore.
+     */
+    private void saveChunks(WorldSnapshot world) throws InterruptedException {
+        if (unsavedChunks.isEmpty()) return;
+        if (store == null) {
+            unsavedChunks.clear();
+            return;
+        }
+
+        int fingerprint = targetStates.hashCode();
+        for (Iterator<Long> it = unsavedChunks.iterator(); it.hasNext(); ) {
+            long key = it.next();
+            it.remove();
+            int cx = ChunkSnapshot.keyX(key), cz = ChunkSnapshot.keyZ(key);
+
+            long scannedMask = 0;
+            for (int i = 0; i < 64; i++) {
+                if (scannedSections.contains(SectionSnapshot.key(cx, bottomSection + i, cz))) scannedMask |= 1L << i;
+            }
+            long[] chunkOres = exposedOres.getChunk(cx, cz);
+            // An empty record only replaces an outdated one, restoring it brings nothing back
+            boolean empty = scannedMask == 0 && chunkOres.length == 0;
+            long hash = empty ? 0 : recordHash(world, cx, cz, scannedMask, chunkOres);
+            if (!empty && hash == 0) continue;
+
+            ByteBuffer record = ByteBuffer.allocate(24 + chunkOres.length * 4);
+            record.putLong(hash).putInt(fingerprint).putLong(scannedMask).putInt(chunkOres.length);
+            for (long ore : chunkOres) {
+                record.putInt(PackedPos.y(ore) << 8 | (PackedPos.z(ore) & 15) << 4 | PackedPos.x(ore) & 15);
+            }
+            store.write(cx, cz, record.flip());
+        }
+    }
+
+    /**
+     * Hash of the sections a chunk's record depends on: the scanned ones and the ones holding its ores, with a
+     * section of margin for the exposure of blocks at their borders. 0 when the chunk is not loaded.
+     */
+    private long recordHash(WorldSnapshot world, int cx, int cz, long scannedMask, long[] chunkOres) throws InterruptedException {
+        int minSection = Integer.MAX_VALUE, maxSection = Integer.MIN_VALUE;
+        if (scannedMask != 0) {
+            minSection = bottomSection + Long.numberOfTrailingZeros(scannedMask);
+            maxSection = bottomSection + 63 - Long.numberOfLeadingZeros(scannedMask);
+        }
+        for (long ore : chunkOres) {
+            minSection = Math.min(minSection, PackedPos.y(ore) >> 4);
+            maxSection = Math.max(maxSection, PackedPos.y(ore) >> 4);
+        }
+        return blocks.contentHash(world, cx, cz, minSection - 1, maxSection + 1);
+    }
+
+    // Forgets scan results for changed sections so the next pass looks at them again
+    private void processDirtySections() {
+        if (dirtySections.isEmpty()) return;
+        int volumeSize = caveVolumeSize();
+
+        for (Iterator<Long> it = dirtySections.iterator(); it.hasNext(); ) {
+            long key = it.next();
+            it.remove();
+            if (scannedSections.remove(key)) unsavedChunks.add(ChunkSnapshot.key(SectionSnapshot.keyX(key), SectionSnapshot.keyZ(key)));
+
+            int minX = SectionSnapshot.keyX(key) << 4;
+            int minY = SectionSnapshot.keyY(key) << 4;
+            int minZ = SectionSnapshot.keyZ(key) << 4;
+            // Areas overlapping the section start in its chunk or in the chunks before it
+            for (int cx = (minX - volumeSize + 1) >> 4; cx <= minX >> 4; cx++) {
+                for (int cz = (minZ - volumeSize + 1) >> 4; cz <= minZ >> 4; cz++) {
+                    scannedCaveAreas.removeIf(cx, cz, area -> {
+                        boolean overlaps = PackedPos.x(area) <= minX + 15 && PackedPos.x(area) + volumeSize > minX
+                            && PackedPos.y(area) <= minY + 15 && PackedPos.y(area) + volumeSize > minY
+                            && PackedPos.z(area) <= minZ + 15 && PackedPos.z(area) + volumeSize > minZ;
+                        if (overlaps) pendingCaveAreas.add(PackedPos.x(area), PackedPos.y(area), PackedPos.z(area));
+                        return overlaps;
+                    });
                 }
             }
         }
     }
 
-    private void findOreVein(BlockPos seedPos, Block oreType) {
-        if (mc.world == null) return;
+    private boolean isTarget(int stateId) {
+        return stateId >= 0 && targetStates.get(stateId);
+    }
+
+    /**
+     * The blocks of the columns about to be scanned, the chunks whose ores need a re-check and every cave
+     * area not scanned yet. Standing still this is next to nothing; on the move it is the strip that just
+     * entered the radius. Caves found in the same pass are inside the cave finder's part of the snapshot.
+     */
+    private ScanPipeline.Region passRegion(boolean caves, LongArrayList columns) {
+        BlockPos playerPos = mc.player.getBlockPos();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+        for (int i = 0; i < columns.size(); i++) {
+            int cx = ChunkSnapshot.keyX(columns.getLong(i)), cz = ChunkSnapshot.keyZ(columns.getLong(i));
+            minX = Math.min(minX, cx << 4); maxX = Math.max(maxX, (cx << 4) + 15);
+            minZ = Math.min(minZ, cz << 4); maxZ = Math.max(maxZ, (cz << 4) + 15);
+        }
+        for (long key : dirtyOreChunks) {
+            int cx = ChunkSnapshot.keyX(key), cz = ChunkSnapshot.keyZ(key);
+            if (isChunkOutOfRange(cx, cz, playerPos)) continue;
+            minX = Math.min(minX, cx << 4); maxX = Math.max(maxX, (cx << 4) + 15);
+            minZ = Math.min(minZ, cz << 4); maxZ = Math.max(maxZ, (cz << 4) + 15);
+        }
+        if (minX <= maxX) {
+            // Whole sections are scanned, so the height is that of the sections the radius touches
+            minY = lowSectionY(playerPos) << 4;
+            maxY = (highSectionY(playerPos) << 4) + 15;
+        }
+
+        if (caves) {
+            int size = caveVolumeSize();
+            for (long area : pendingCaveAreas.toArray()) {
+                int x = PackedPos.x(area), y = PackedPos.y(area), z = PackedPos.z(area);
+                minX = Math.min(minX, x); maxX = Math.max(maxX, x + size);
+                minY = Math.min(minY, y); maxY = Math.max(maxY, y + size);
+                minZ = Math.min(minZ, z); maxZ = Math.max(maxZ, z + size);
+            }
+        }
+
+        // Nothing new to scan, still capture the player's surroundings for cleanup
+        if (minX > maxX) {
+            minX = maxX = playerPos.getX();
+            minY = maxY = playerPos.getY();
+            minZ = maxZ = playerPos.getZ();
+        }
+
+        // One block of margin for exposure checks, plus room for veins crossing the edge
+        int margin = 8;
+        return new ScanPipeline.Region(minX - margin, minY - margin, minZ - margin, maxX + margin, maxY + margin, maxZ + margin);
+    }
+
+    // Drops veins past despawn-distance whole and re-checks only the veins in chunks that changed
+    private void cleanupOres(WorldSnapshot world) {
+        if (mc.player == null) return;
+        BlockPos playerPos = mc.player.getBlockPos();
+
+        // Veins and scan marks go by the same chunk test: a vein is dropped only once every chunk it touches
+        // is out of range, so the section or cave area it was found in never stays marked without it
+        boolean changed = false;
+        for (OreVein vein : veins.values()) {
+            if (!isVeinOutOfRange(vein, playerPos)) continue;
+            dropVein(vein);
+            changed = true;
+        }
+
+        ChunkIndex.ChunkPredicate outOfRange = (cx, cz) -> isChunkOutOfRange(cx, cz, playerPos);
+        // A cave area reaches into the chunks after its own, it goes as soon as any of them is out of range
+        int span = (caveVolumeSize() + 15) >> 4;
+        scannedCaveAreas.removeChunksIf((cx, cz) -> outOfRange.test(cx, cz) || outOfRange.test(cx + span, cz)
+            || outOfRange.test(cx, cz + span) || outOfRange.test(cx + span, cz + span));
+        pendingCaveAreas.removeChunksIf(outOfRange);
+        // A remembered section is only skipped while ores around it are kept
+        scannedSections.removeIf(key -> outOfRange.test(SectionSnapshot.keyX(key), SectionSnapshot.keyZ(key)));
+        dirtyOreChunks.removeIf(key -> outOfRange.test(ChunkSnapshot.keyX(key), ChunkSnapshot.keyZ(key)));
 
-        if (sendChatMessage.get()) {
-            info("Found ore vein: %s.", oreType.getName().getString());
+        for (Iterator<Long> it = dirtyOreChunks.iterator(); it.hasNext(); ) {
+            long key = it.next();
+            int cx = ChunkSnapshot.keyX(key), cz = ChunkSnapshot.keyZ(key);
+            // Chunks outside the snapshot stay dirty until they are captured
+            if (!world.isChunkLoaded(cx, cz)) continue;
+            it.remove();
+
+            for (OreVein vein : veins.values()) {
+                if (vein.intersectsChunk(cx, cz)) changed |= refreshVein(world, vein);
+            }
+        }
+        if (changed) visibility.signal();
+    }
+
+    /**
+     * Drops the blocks of the vein that are no longer ore and counts its exposed faces again, replacing or
+     * removing the vein. Blocks outside the snapshot are kept as they are. Returns whether the vein changed.
+     */
+    private boolean refreshVein(WorldSnapshot world, OreVein vein) {
+        LongArrayList kept = new LongArrayList(vein.size());
+        boolean complete = true;
+        for (int i = 0; i < vein.size(); i++) {
+            long member = vein.member(i);
+            int x = PackedPos.x(member), y = PackedPos.y(member), z = PackedPos.z(member);
+            int stateId = world.getStateId(x, y, z);
+            if (stateId >= 0 && !isTarget(stateId)) {
+                exposedOres.remove(x, y, z);
+                unsavedChunks.add(ChunkSnapshot.key(x >> 4, z >> 4));
+                continue;
+            }
+            complete &= stateId >= 0;
+            kept.add(member);
         }
 
-        List<BlockPos> queue = new ArrayList<>();
-        queue.add(seedPos);
-        int head = 0;
+        if (kept.isEmpty()) {
+            veins.remove(vein.getId(), vein);
+            return true;
+        }
+        // Neighbours outside the snapshot would read as not air, keep the old count unless every block was seen
+        int faces = complete ? exposedFaces(world, kept) : vein.getExposedFaces();
+        if (kept.size() == vein.size() && faces == vein.getExposedFaces()) return false;
+
+        veins.replace(vein.getId(), vein, new OreVein(vein.getId(), vein.getStateId(), kept.toLongArray(), faces));
+        return true;
+    }
+
+    // Every chunk the vein's bounding box touches is out of range; the nearest one decides
+    private boolean isVeinOutOfRange(OreVein vein, BlockPos playerPos) {
+        int cx = Math.max(vein.getMinX() >> 4, Math.min(vein.getMaxX() >> 4, playerPos.getX() >> 4));
+        int cz = Math.max(vein.getMinZ() >> 4, Math.min(vein.getMaxZ() >> 4, playerPos.getZ() >> 4));
+        return isChunkOutOfRange(cx, cz, playerPos);
+    }
+
+    // Horizontal distance from the player to the nearest point of the chunk is past despawn-distance
+    private boolean isChunkOutOfRange(int chunkX, int chunkZ, BlockPos playerPos) {
+        return chunkDistanceSq(chunkX, chunkZ, playerPos) > (long) despawnDistance.get() * despawnDistance.get();
+    }
+
+    // Squared horizontal distance from the player to the nearest point of the chunk
+    private static long chunkDistanceSq(int chunkX, int chunkZ, BlockPos playerPos) {
+        long dx = Math.max(0, Math.max((chunkX << 4) - playerPos.getX(), playerPos.getX() - ((chunkX << 4) + 15)));
+        long dz = Math.max(0, Math.max((chunkZ << 4) - playerPos.getZ(), playerPos.getZ() - ((chunkZ << 4) + 15)));
+        return dx * dx + dz * dz;
+    }
 
-        while (head < queue.size()) {
-            BlockPos current = queue.get(head++);
-            for (int x = -1; x <= 1; x++) {
-                for (int y = -1; y <= 1; y++) {
-                    for (int z = -1; z <= 1; z++) {
-                        if (x == 0 && y == 0 && z == 0) continue;
+    /**
+     * Chunk columns the player radius touches that hold a section not scanned yet. Scanned sections are
+     * remembered until they change or fall past despawn-distance, so after a move these are the columns
+     * that just entered the radius and standing still finds none.
+     */
+    private LongArrayList pendingColumns() {
+        BlockPos playerPos = mc.player.getBlockPos();
+        int radius = playerScanRadius.get();
+        int lowSection = lowSectionY(playerPos), highSection = highSectionY(playerPos);
 
-                        BlockPos neighbor = current.add(x, y, z);
-                        if (exposedOres.contains(neighbor)) continue;
+        LongArrayList columns = new LongArrayList();
+        for (int cx = (playerPos.getX() - radius) >> 4; cx <= (playerPos.getX() + radius) >> 4; cx++) {
+            for (int cz = (playerPos.getZ() - radius) >> 4; cz <= (playerPos.getZ() + radius) >> 4; cz++) {
+                if (chunkDistanceSq(cx, cz, playerPos) > (long) radius * radius) continue;
+                if (!WorldTracker.get().isChunkLoaded(cx, cz)) continue;
 
-                        if (mc.world.getBlockState(neighbor).getBlock() == oreType) {
-                            exposedOres.add(neighbor);
-                            queue.add(neighbor);
-                        }
+                for (int sy = lowSection; sy <= highSection; sy++) {
+                    if (!scannedSections.contains(SectionSnapshot.key(cx, sy, cz))) {
+                        columns.add(ChunkSnapshot.key(cx, cz));
+                        break;
                     }
                 }
             }
         }
+        return columns;
     }
 
-    private boolean isExposed(BlockPos pos) {
-        if (mc.world == null) return false;
-        for (Direction direction : Direction.values()) {
-            if (isAir(pos.offset(direction))) return true;
+    // Returns the number of chunk columns handed to the workers
+    private int scanAroundPlayer(WorldSnapshot world, LongArrayList columns) throws InterruptedException {
+        if (mc.player == null || columns.isEmpty()) return 0;
+
+        BlockPos playerPos = mc.player.getBlockPos();
+        int lowSection = lowSectionY(playerPos), highSection = highSectionY(playerPos);
+
+        // One task per chunk column, nearest and in view first
+        ScanPerformance.updateViewer(scheduler);
+        int[] order = scheduler.order(columns.size(), i -> scheduler.priority(
+            (ChunkSnapshot.keyX(columns.getLong(i)) << 4) + 8, playerPos.getY(), (ChunkSnapshot.keyZ(columns.getLong(i)) << 4) + 8, 12));
+
+        scheduler.run(order.length, (from, to) -> ScanExecutor.get().forEach(to - from, n -> {
+            long column = columns.getLong(order[from + n]);
+            int cx = ChunkSnapshot.keyX(column), cz = ChunkSnapshot.keyZ(column);
+            if (!world.isChunkLoaded(cx, cz)) return;
+
+            for (int sy = lowSection; sy <= highSection; sy++) {
+                session.checkpoint();
+                long key = SectionSnapshot.key(cx, sy, cz);
+                if (scannedSections.contains(key)) continue;
+
+                scanSection(world, cx, sy, cz);
+                session.publish(() -> {
+                    if (scannedSections.add(key)) unsavedChunks.add(column);
+                });
+            }
+        }));
+        return order.length;
+    }
+
+    // Whole sections are scanned so each is done once, the radius only decides which sections are due
+    private void scanSection(WorldSnapshot world, int cx, int sy, int cz) {
+        // Most sections hold none of the ores, their palette says so without looking at the blocks
+        SectionSnapshot section = world.getSection(cx, sy, cz);
+        if (section == null || !section.containsAny(targetStates)) {
+            ScanStats.get().ores.sectionsSkipped.increment();
+            return;
+        }
+        ScanStats.get().ores.blocksRead.add(SectionSnapshot.VOLUME);
+        addExposedVeins(world, section, cx, sy, cz, cx << 4, sy << 4, cz << 4, (cx << 4) + 15, (sy << 4) + 15, (cz << 4) + 15);
+    }
+
+    // Walks the veins of the section's exposed ores inside the box
+    private void addExposedVeins(WorldSnapshot world, SectionSnapshot section, int sx, int sy, int sz,
+                                 int x0, int y0, int z0, int x1, int y1, int z1) {
+        OreKernels.forEachExposed(world, section, sx, sy, sz, targetStates, x0, y0, z0, x1, y1, z1,
+            (x, y, z, stateId) -> addVein(world, x, y, z, stateId));
+    }
+
+    private int lowSectionY(BlockPos playerPos) {
+        return Math.max(mc.world.getBottomY(), playerPos.getY() - playerScanRadius.get()) >> 4;
+    }
+
+    private int highSectionY(BlockPos playerPos) {
+        return Math.min(mc.world.getTopYInclusive(), playerPos.getY() + playerScanRadius.get()) >> 4;
+    }
+
+    private long playerSection() {
+        if (mc.player == null) return 0;
+        BlockPos pos = mc.player.getBlockPos();
+        return SectionSnapshot.key(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+    }
+
+    /**
+     * Takes the announced cave areas that are in the snapshot and still caves. Returns the number of cave
+     * areas handed to the workers.
+     */
+    private int scanBigCaves(WorldSnapshot world) throws InterruptedException {
+        if (bigCavesFinder == null || !bigCavesFinder.isActive() || pendingCaveAreas.size() == 0) return 0;
+
+        List<BlockPos> areas = new ArrayList<>();
+        for (long area : pendingCaveAreas.toArray()) {
+            int x = PackedPos.x(area), y = PackedPos.y(area), z = PackedPos.z(area);
+            // Areas in chunks that are not loaded yet wait for them
+            if (!world.isChunkLoaded(x >> 4, z >> 4)) continue;
+            pendingCaveAreas.remove(x, y, z);
+
+            BlockPos pos = new BlockPos(x, y, z);
+            if (bigCavesFinder.foundCaves.contains(pos) && scannedCaveAreas.add(x, y, z)) areas.add(pos);
         }
-        return false;
+
+        ScanPerformance.updateViewer(scheduler);
+        double half = caveVolumeSize() / 2.0;
+        int[] order = scheduler.order(areas.size(), i -> {
+            BlockPos area = areas.get(i);
+            return scheduler.priority(area.getX() + half, area.getY() + half, area.getZ() + half, half * Math.sqrt(3));
+        });
+        scheduler.run(order.length, (from, to) -> ScanExecutor.get().forEach(to - from, n -> scanAreaForExposedOres(world, areas.get(order[from + n]))));
+        return order.length;
+    }
+
+    private int caveVolumeSize() {
+        return bigCavesFinder != null ? bigCavesFinder.checkVolumeSize.get() : 16;
     }
 
-    private boolean isAir(BlockPos pos) {
-        if (mc.world == null) return false;
-        Block block = mc.world.getBlockState(pos).getBlock();
-        return block == Blocks.AIR || block == Blocks.CAVE_AIR;
+    private void scanAreaForExposedOres(WorldSnapshot world, BlockPos areaStartPos) {
+        session.checkpoint();
+        int volumeSize = caveVolumeSize();
+        int x0 = areaStartPos.getX(), y0 = areaStartPos.getY(), z0 = areaStartPos.getZ();
+        int x1 = x0 + volumeSize - 1, y1 = y0 + volumeSize - 1, z1 = z0 + volumeSize - 1;
+
+        // Section by section, skipping the ones whose palette has none of the ores
+        for (int sx = x0 >> 4; sx <= x1 >> 4; sx++) {
+            for (int sy = y0 >> 4; sy <= y1 >> 4; sy++) {
+                for (int sz = z0 >> 4; sz <= z1 >> 4; sz++) {
+                    SectionSnapshot section = world.getSection(sx, sy, sz);
+                    if (section == null || !section.containsAny(targetStates)) {
+                        ScanStats.get().ores.sectionsSkipped.increment();
+                        continue;
+                    }
+                    ScanStats.get().ores.blocksRead.add((long) (Math.min(x1, (sx << 4) + 15) - Math.max(x0, sx << 4) + 1)
+                        * (Math.min(y1, (sy << 4) + 15) - Math.max(y0, sy << 4) + 1)
+                        * (Math.min(z1, (sz << 4) + 15) - Math.max(z0, sz << 4) + 1));
+                    addExposedVeins(world, section, sx, sy, sz, x0, y0, z0, x1, y1, z1);
+                }
+            }
+        }
     }
 
     @Override
     public String getInfoString() {
-        return String.valueOf(exposedOres.size());
+        return String.valueOf(veins.size());
     }
 }
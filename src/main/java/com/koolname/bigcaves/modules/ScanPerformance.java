@@ -0,0 +1,83 @@
+package com.koolname.bigcaves.modules;
+
+import com.koolname.bigcaves.scan.ScanExecutor;
+import com.koolname.bigcaves.scan.ScanScheduler;
+import com.koolname.bigcaves.scan.ScanThrottle;
+import meteordevelopment.meteorclient.settings.IntSetting;
+import meteordevelopment.meteorclient.settings.Setting;
+import meteordevelopment.meteorclient.settings.SettingGroup;
+import net.minecraft.client.render.Camera;
+import net.minecraft.client.util.Window;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * The Performance settings of a scanning module and what they ask of the shared {@link ScanExecutor} and
+ * {@link ScanThrottle}. Every module adds its own copy to its own group; the pool follows the largest
+ * request and the throttle the strictest targets, so the module with the stricter settings decides.
+ */
+final class ScanPerformance {
+    private final Object owner;
+
+    private final Setting<Integer> scanThreads;
+    private final Setting<Integer> reservedCores;
+    private final Setting<Integer> maxFrameTime;
+    private final Setting<Integer> maxScanCpu;
+
+    ScanPerformance(Object owner, SettingGroup group) {
+        this.owner = owner;
+
+        scanThreads = group.add(new IntSetting.Builder()
+            .name("scan-threads")
+            .description("Worker threads shared by the scanners. 0 uses every core except the reserved ones.")
+            .defaultValue(0)
+            .min(0).sliderMax(16)
+            .build()
+        );
+
+        reservedCores = group.add(new IntSetting.Builder()
+            .name("reserved-cores")
+            .description("Cores left free for the render and server threads when scan-threads is 0.")
+            .defaultValue(2)
+            .min(0).sliderMax(8)
+            .build()
+        );
+
+        maxFrameTime = group.add(new IntSetting.Builder()
+            .name("max-frame-time")
+            .description("Average frame time in milliseconds the scanners back off to keep. 0 ignores frame time.")
+            .defaultValue(25)
+            .min(0).sliderMax(100)
+            .build()
+        );
+
+        maxScanCpu = group.add(new IntSetting.Builder()
+            .name("max-scan-cpu")
+            .description("Percent of all cores the scan threads may use. 0 ignores CPU use.")
+            .defaultValue(50)
+            .min(0).max(100).sliderMax(100)
+            .build()
+        );
+    }
+
+    /** Requests the owner's workers and sets its targets. Called on activation and before every pass, so changed settings apply. */
+    void apply() {
+        ScanExecutor.get().request(owner, ScanExecutor.parallelism(scanThreads.get(), reservedCores.get()));
+        ScanThrottle.get().setTargets(owner, maxFrameTime.get(), maxScanCpu.get() / 100.0);
+    }
+
+    void release() {
+        ScanExecutor.get().release(owner);
+        ScanThrottle.get().release(owner);
+    }
+
+    /** Points the scheduler at the camera, so work in view runs first. */
+    static void updateViewer(ScanScheduler scheduler) {
+        Camera camera = mc.gameRenderer.getCamera();
+        if (camera.getPos() == null) return;
+        Window window = mc.getWindow();
+        double aspect = window.getFramebufferHeight() > 0 ? (double) window.getFramebufferWidth() / window.getFramebufferHeight() : 16 / 9.0;
+        scheduler.setViewer(camera.getPos().x, camera.getPos().y, camera.getPos().z, camera.getYaw(), camera.getPitch(),
+            mc.options.getFov().getValue(), aspect);
+    }
+}
@@ -0,0 +1,81 @@
+package com.koolname.bigcaves.modules;
+
+import com.koolname.bigcaves.scan.ChunkRecording;
+import com.koolname.bigcaves.scan.SnapshotCapture;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import meteordevelopment.meteorclient.MeteorClient;
+import meteordevelopment.meteorclient.settings.IntSetting;
+import meteordevelopment.meteorclient.settings.Setting;
+import meteordevelopment.meteorclient.settings.SettingGroup;
+import meteordevelopment.meteorclient.systems.modules.Module;
+import net.minecraft.block.Block;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves the loaded chunks around the player as a {@link ChunkRecording}, then turns itself off. The
+ * recording replays the same blocks to the scan kernels offline, e.g. in the benchmarks.
+ */
+public class ScanRecorder extends Module {
+    private static final Logger LOGGER = Logger.getLogger(ScanRecorder.class.getName());
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss");
+
+    private final SettingGroup sgGeneral = settings.getDefaultGroup();
+
+    private final Setting<Integer> chunkRadius = sgGeneral.add(new IntSetting.Builder()
+        .name("chunk-radius")
+        .description("Radius in chunks around the player to record.")
+        .defaultValue(8)
+        .min(1).sliderMax(32)
+        .build()
+    );
+
+    public ScanRecorder() {
+        super(com.koolname.bigcaves.BigCavesAddon.CATEGORY, "scan-recorder", "Records the loaded chunks around you for offline scan profiling.");
+    }
+
+    @Override
+    public void onActivate() {
+        if (mc.world == null || mc.player == null) {
+            error("Join a world first.");
+            toggle();
+            return;
+        }
+
+        BlockPos playerPos = mc.player.getBlockPos();
+        int radius = chunkRadius.get();
+        int chunkX = playerPos.getX() >> 4, chunkZ = playerPos.getZ() >> 4;
+        int minY = mc.world.getBottomY(), maxY = mc.world.getTopYInclusive();
+        Path file = MeteorClient.FOLDER.toPath().resolve("big-caves").resolve("recordings")
+            .resolve(LocalDateTime.now().format(FILE_NAME) + ".bcrec");
+
+        // Chat messages and the toggle go through the client thread
+        Thread thread = new Thread(() -> {
+            try {
+                WorldSnapshot world = SnapshotCapture.CLIENT.capture(chunkX - radius, chunkZ - radius, chunkX + radius, chunkZ + radius, minY, maxY);
+                Files.createDirectories(file.getParent());
+                ChunkRecording.write(file, world.getChunks(), id -> Block.getStateFromRawId(id).toString());
+                mc.execute(() -> info("Recorded %d chunks to %s.", world.chunkCount(), file.getFileName()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot write chunk recording " + file, e);
+                mc.execute(() -> error("Could not write the recording: %s", e.getMessage()));
+            } finally {
+                mc.execute(() -> {
+                    if (isActive()) toggle();
+                });
+            }
+        }, "ScanRecorder-Thread");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,306 @@
+package com.koolname.bigcaves.render;
+
+import com.koolname.bigcaves.scan.PackedPos;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import meteordevelopment.meteorclient.renderer.Renderer3D;
+import meteordevelopment.meteorclient.renderer.ShapeMode;
+import meteordevelopment.meteorclient.utils.render.color.Color;
+
+import java.util.Arrays;
+
+/**
+ * Surface of a set of equally sized grid cells, ready to draw.
+ * <p>
+ * Faces shared by two cells are dropped, the remaining coplanar faces are merged into rectangles (greedy
+ * meshing) and the outline keeps only the edges where the surface folds, joined into single lines. Draw
+ * cost depends on the shape of the set rather than on how many cells it has. Meshes are immutable, owners
+ * rebuild them when the cell set changes. The world-space bounding box is kept for culling.
+ */
+public final class CellMesh {
+    public static final CellMesh EMPTY = new CellMesh(new double[0], 0, new double[0], 0, new double[6]);
+
+    // Per axis (x, y, z): bits of a packed coordinate and the offset that makes it unsigned
+    private static final int[] BITS = {26, 12, 26};
+    private static final int[] OFFSET = {1 << 25, 1 << 11, 1 << 25};
+
+    private final double[] quads; // 4 corners of xyz per quad
+    private final int quadCount;
+    private final double[] lines; // 2 ends of xyz per line
+    private final int lineCount;
+    private final double[] bounds; // min xyz, max xyz
+
+    private CellMesh(double[] quads, int quadCount, double[] lines, int lineCount, double[] bounds) {
+        this.quads = quads;
+        this.quadCount = quadCount;
+        this.lines = lines;
+        this.lineCount = lineCount;
+        this.bounds = bounds;
+    }
+
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public boolean isEmpty() {
+        return quadCount == 0;
+    }
+
+    public double getMinX() {
+        return bounds[0];
+    }
+
+    public double getMinY() {
+        return bounds[1];
+    }
+
+    public double getMinZ() {
+        return bounds[2];
+    }
+
+    public double getMaxX() {
+        return bounds[3];
+    }
+
+    public double getMaxY() {
+        return bounds[4];
+    }
+
+    public double getMaxZ() {
+        return bounds[5];
+    }
+
+    public void render(Renderer3D renderer, Color sideColor, Color lineColor, ShapeMode mode) {
+        if (mode.sides() && sideColor.a > 0) {
+            for (int i = 0, n = quadCount * 12; i < n; i += 12) {
+                renderer.quad(quads[i], quads[i + 1], quads[i + 2], quads[i + 3], quads[i + 4], quads[i + 5],
+                    quads[i + 6], quads[i + 7], quads[i + 8], quads[i + 9], quads[i + 10], quads[i + 11], sideColor);
+            }
+        }
+        if (mode.lines() && lineColor.a > 0) {
+            for (int i = 0, n = lineCount * 6; i < n; i += 6) {
+                renderer.line(lines[i], lines[i + 1], lines[i + 2], lines[i + 3], lines[i + 4], lines[i + 5], lineColor);
+            }
+        }
+    }
+
+    /**
+     * Builds the mesh of the given cells, {@link PackedPos packed} grid coordinates whose cell {@code (x, y, z)}
+     * spans {@code x * cellSize .. (x + 1) * cellSize} in world space on every axis.
+     */
+    public static CellMesh build(LongSet cells, double cellSize) {
+        if (cells.isEmpty()) return EMPTY;
+        return new Builder(cells, cellSize).build();
+    }
+
+    private static final class Builder {
+        private final LongSet cells;
+        private final double cellSize;
+
+        private final LongOpenHashSet merged = new LongOpenHashSet();
+        private final LongOpenHashSet[] edges = {new LongOpenHashSet(), new LongOpenHashSet(), new LongOpenHashSet()};
+        private final int[] p = new int[3];
+        private final int[] q = new int[3];
+
+        private double[] quads = new double[12 * 16];
+        private int quadCount;
+        private double[] lines = new double[6 * 16];
+        private int lineCount;
+
+        Builder(LongSet cells, double cellSize) {
+            this.cells = cells;
+            this.cellSize = cellSize;
+        }
+
+        CellMesh build() {
+            long[] faces = new long[cells.size()];
+            for (int axis = 0; axis < 3; axis++) {
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    buildDirection(axis, sign, faces);
+                }
+            }
+            for (int axis = 0; axis < 3; axis++) mergeEdges(axis);
+            return new CellMesh(quads, quadCount, lines, lineCount, bounds());
+        }
+
+        // Every cell has an exposed face on each side of the set, so the quad corners span the whole box
+        private double[] bounds() {
+            double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+            for (int i = 0, n = quadCount * 12; i < n; i += 3) {
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], quads[i + axis]);
+                    bounds[3 + axis] = Math.max(bounds[3 + axis], quads[i + axis]);
+                }
+            }
+            return bounds;
+        }
+
+        // Greedy-merges the exposed faces pointing along +axis or -axis
+        private void buildDirection(int a, int s, long[] faces) {
+            int u = (a + 1) % 3, v = (a + 2) % 3;
+
+            // Sorted by plane, then v, then u, so every rectangle starts at its lowest corner
+            int count = 0;
+            for (LongIterator it = cells.iterator(); it.hasNext(); ) {
+                long cell = it.nextLong();
+                unpack(cell, p);
+                if (isExposed(p, a, s)) faces[count++] = sortKey(p, a, v, u) ^ Long.MIN_VALUE;
+            }
+            Arrays.sort(faces, 0, count);
+
+            for (int i = 0; i < count; i++) {
+                fromSortKey(faces[i] ^ Long.MIN_VALUE, a, v, u, p);
+                addFaceEdges(a, s, u, v);
+            }
+
+            merged.clear();
+            for (int i = 0; i < count; i++) {
+                fromSortKey(faces[i] ^ Long.MIN_VALUE, a, v, u, p);
+                if (merged.contains(pack(p))) continue;
+
+                int width = 1;
+                while (true) {
+                    copy(p, q);
+                    q[u] += width;
+                    if (!isExposed(q, a, s) || merged.contains(pack(q))) break;
+                    width++;
+                }
+
+                int height = 1;
+                grow:
+                while (true) {
+                    for (int w = 0; w < width; w++) {
+                        copy(p, q);
+                        q[u] += w;
+                        q[v] += height;
+                        if (!isExposed(q, a, s) || merged.contains(pack(q))) break grow;
+                    }
+                    height++;
+                }
+
+                for (int h = 0; h < height; h++) {
+                    for (int w = 0; w < width; w++) {
+                        copy(p, q);
+                        q[u] += w;
+                        q[v] += h;
+                        merged.add(pack(q));
+                    }
+                }
+
+                addQuad(a, u, v, p[a] + (s > 0 ? 1 : 0), p[u], p[v], p[u] + width, p[v] + height);
+            }
+        }
+
+        // Outline edges of the face of cell p, skipping those shared with a coplanar neighbouring face
+        private void addFaceEdges(int a, int s, int u, int v) {
+            int plane = p[a] + (s > 0 ? 1 : 0);
+            for (int side = 0; side < 2; side++) {
+                copy(p, q);
+                q[v] += side == 0 ? -1 : 1;
+                if (!isExposed(q, a, s)) addEdge(u, a, plane, u, p[u], v, p[v] + side);
+
+                copy(p, q);
+                q[u] += side == 0 ? -1 : 1;
+                if (!isExposed(q, a, s)) addEdge(v, a, plane, u, p[u] + side, v, p[v]);
+            }
+        }
+
+        private void addEdge(int axis, int a, int planeCoord, int u, int uCoord, int v, int vCoord) {
+            q[a] = planeCoord;
+            q[u] = uCoord;
+            q[v] = vCoord;
+            edges[axis].add(pack(q));
+        }
+
+        // Joins unit edges along the axis into lines, starting from each run's first edge
+        private void mergeEdges(int axis) {
+            LongOpenHashSet set = edges[axis];
+            for (LongIterator it = set.iterator(); it.hasNext(); ) {
+                long edge = it.nextLong();
+                unpack(edge, p);
+
+                copy(p, q);
+                q[axis]--;
+                if (set.contains(pack(q))) continue;
+
+                int length = 1;
+                while (true) {
+                    copy(p, q);
+                    q[axis] += length;
+                    if (!set.contains(pack(q))) break;
+                    length++;
+                }
+
+                copy(p, q);
+                q[axis] += length;
+                addLine(p, q);
+            }
+        }
+
+        private boolean isExposed(int[] cell, int a, int s) {
+            if (!cells.contains(pack(cell))) return false;
+            cell[a] += s;
+            boolean covered = cells.contains(pack(cell));
+            cell[a] -= s;
+            return !covered;
+        }
+
+        private void addQuad(int a, int u, int v, int plane, int u0, int v0, int u1, int v1) {
+            if ((quadCount + 1) * 12 > quads.length) quads = Arrays.copyOf(quads, quads.length * 2);
+            int i = quadCount++ * 12;
+            i = corner(i, a, u, v, plane, u0, v0);
+            i = corner(i, a, u, v, plane, u1, v0);
+            i = corner(i, a, u, v, plane, u1, v1);
+            corner(i, a, u, v, plane, u0, v1);
+        }
+
+        private int corner(int i, int a, int u, int v, int plane, int uCoord, int vCoord) {
+            quads[i + a] = plane * cellSize;
+            quads[i + u] = uCoord * cellSize;
+            quads[i + v] = vCoord * cellSize;
+            return i + 3;
+        }
+
+        private void addLine(int[] from, int[] to) {
+            if ((lineCount + 1) * 6 > lines.length) lines = Arrays.copyOf(lines, lines.length * 2);
+            int i = lineCount++ * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                lines[i + axis] = from[axis] * cellSize;
+                lines[i + 3 + axis] = to[axis] * cellSize;
+            }
+        }
+    }
+
+    private static long sortKey(int[] p, int a, int v, int u) {
+        return (long) (p[a] + OFFSET[a]) << (BITS[v] + BITS[u])
+            | (long) (p[v] + OFFSET[v]) << BITS[u]
+            | (p[u] + OFFSET[u]);
+    }
+
+    private static void fromSortKey(long key, int a, int v, int u, int[] p) {
+        p[u] = (int) (key & ((1L << BITS[u]) - 1)) - OFFSET[u];
+        p[v] = (int) (key >>> BITS[u] & ((1L << BITS[v]) - 1)) - OFFSET[v];
+        p[a] = (int) (key >>> (BITS[v] + BITS[u])) - OFFSET[a];
+    }
+
+    private static long pack(int[] p) {
+        return PackedPos.pack(p[0], p[1], p[2]);
+    }
+
+    private static void unpack(long packed, int[] p) {
+        p[0] = PackedPos.x(packed);
+        p[1] = PackedPos.y(packed);
+        p[2] = PackedPos.z(packed);
+    }
+
+    private static void copy(int[] from, int[] to) {
+        to[0] = from[0];
+        to[1] = from[1];
+        to[2] = from[2];
+    }
+}
@@ -0,0 +1,119 @@
+package com.koolname.bigcaves.render;
+
+import meteordevelopment.meteorclient.renderer.Renderer3D;
+import meteordevelopment.meteorclient.renderer.ShapeMode;
+import meteordevelopment.meteorclient.utils.render.color.Color;
+import net.minecraft.client.render.Camera;
+import net.minecraft.client.util.Window;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * Draws {@link CellMesh meshes} for one frame, skipping what the camera cannot see.
+ * <p>
+ * A mesh whose bounding box lies outside the view frustum is not drawn. One that covers fewer pixels than the
+ * minimum screen size is skipped, and one farther away than the detail distance is drawn as its bounding box
+ * instead of its full surface. Drawn quads and lines are counted for the stats. Used on the render thread only.
+ */
+public class LodRenderer {
+    // Widens the frustum so FOV effects and view bobbing do not cut off meshes at the screen edge
+    private static final double FRUSTUM_MARGIN = 1.15;
+
+    private double eyeX, eyeY, eyeZ;
+    // Inward normals of the left, right, bottom and top planes, which all pass through the eye
+    private final double[][] planes = new double[4][3];
+    private double pixelsPerRadian;
+    private double detailDistanceSq;
+    private double minPixels;
+
+    private int quads, lines;
+
+    /**
+     * Starts a frame from the current camera. Meshes farther than {@code detailDistance} blocks collapse to
+     * their bounding box, meshes smaller than {@code minPixels} on screen are skipped.
+     */
+    public void begin(double detailDistance, double minPixels) {
+        Camera camera = mc.gameRenderer.getCamera();
+        Window window = mc.getWindow();
+        double aspect = window.getFramebufferHeight() > 0 ? (double) window.getFramebufferWidth() / window.getFramebufferHeight() : 16 / 9.0;
+        double fov = Math.toRadians(mc.options.getFov().getValue());
+
+        eyeX = camera.getPos().x;
+        eyeY = camera.getPos().y;
+        eyeZ = camera.getPos().z;
+
+        // Same convention as Entity.getRotationVector
+        double yaw = Math.toRadians(camera.getYaw());
+        double pitch = Math.toRadians(camera.getPitch());
+        double fx = -Math.sin(yaw) * Math.cos(pitch), fy = -Math.sin(pitch), fz = Math.cos(yaw) * Math.cos(pitch);
+        double rx = -Math.cos(yaw), rz = -Math.sin(yaw);
+        // up = right x forward
+        double ux = -rz * fy, uy = rz * fx - rx * fz, uz = rx * fy;
+
+        double tanV = Math.tan(fov / 2) * FRUSTUM_MARGIN;
+        double tanH = tanV * aspect;
+        setPlane(0, fx * tanH + rx, fy * tanH, fz * tanH + rz);
+        setPlane(1, fx * tanH - rx, fy * tanH, fz * tanH - rz);
+        setPlane(2, fx * tanV + ux, fy * tanV + uy, fz * tanV + uz);
+        setPlane(3, fx * tanV - ux, fy * tanV - uy, fz * tanV - uz);
+
+        pixelsPerRadian = Math.max(1, window.getFramebufferHeight()) / fov;
+        detailDistanceSq = detailDistance * detailDistance;
+        this.minPixels = minPixels;
+        quads = 0;
+        lines = 0;
+    }
+
+    public void render(Renderer3D renderer, CellMesh mesh, Color sideColor, Color lineColor, ShapeMode mode) {
+        if (mesh.isEmpty() || !isInFrustum(mesh)) return;
+
+        double dx = Math.max(0, Math.max(mesh.getMinX() - eyeX, eyeX - mesh.getMaxX()));
+        double dy = Math.max(0, Math.max(mesh.getMinY() - eyeY, eyeY - mesh.getMaxY()));
+        double dz = Math.max(0, Math.max(mesh.getMinZ() - eyeZ, eyeZ - mesh.getMaxZ()));
+        double distanceSq = dx * dx + dy * dy + dz * dz;
+
+        if (minPixels > 0 && distanceSq > 0) {
+            double sx = mesh.getMaxX() - mesh.getMinX(), sy = mesh.getMaxY() - mesh.getMinY(), sz = mesh.getMaxZ() - mesh.getMinZ();
+            double size = Math.sqrt(sx * sx + sy * sy + sz * sz);
+            if (size / Math.sqrt(distanceSq) * pixelsPerRadian < minPixels) return;
+        }
+
+        if (distanceSq > detailDistanceSq && mesh.getQuadCount() > 6) {
+            renderer.box(mesh.getMinX(), mesh.getMinY(), mesh.getMinZ(), mesh.getMaxX(), mesh.getMaxY(), mesh.getMaxZ(), sideColor, lineColor, mode, 0);
+            if (mode.sides()) quads += 6;
+            if (mode.lines()) lines += 12;
+            return;
+        }
+
+        mesh.render(renderer, sideColor, lineColor, mode);
+        if (mode.sides()) quads += mesh.getQuadCount();
+        if (mode.lines()) lines += mesh.getLineCount();
+    }
+
+    /** Quads drawn since {@link #begin}. */
+    public int getQuads() {
+        return quads;
+    }
+
+    /** Lines drawn since {@link #begin}. */
+    public int getLines() {
+        return lines;
+    }
+
+    private void setPlane(int index, double x, double y, double z) {
+        planes[index][0] = x;
+        planes[index][1] = y;
+        planes[index][2] = z;
+    }
+
+    // The box is outside if, for some plane, even its corner farthest along the normal is behind it
+    private boolean isInFrustum(CellMesh mesh) {
+        for (double[] n : planes) {
+            double x = (n[0] >= 0 ? mesh.getMaxX() : mesh.getMinX()) - eyeX;
+            double y = (n[1] >= 0 ? mesh.getMaxY() : mesh.getMinY()) - eyeY;
+            double z = (n[2] >= 0 ? mesh.getMaxZ() : mesh.getMinZ()) - eyeZ;
+            if (n[0] * x + n[1] * y + n[2] * z < 0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,339 @@
+package com.koolname.bigcaves.render;
+
+import com.koolname.bigcaves.scan.BlockSource;
+import com.koolname.bigcaves.scan.ChunkSnapshot;
+import com.koolname.bigcaves.scan.OreKernels;
+import com.koolname.bigcaves.scan.OreVein;
+import com.koolname.bigcaves.scan.PackedPos;
+import com.koolname.bigcaves.scan.ScanSignal;
+import com.koolname.bigcaves.scan.SnapshotCapture;
+import com.koolname.bigcaves.scan.VoxelRay;
+import com.koolname.bigcaves.scan.WorldSnapshot;
+import com.koolname.bigcaves.stats.ScanStats;
+import com.koolname.bigcaves.stats.VisibilityRoundEvent;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.client.render.Camera;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * Decides which ore veins are in line of sight of the camera on a background thread.
+ * <p>
+ * Every round traces a time-boxed batch of veins against a snapshot of the world, most urgent first: veins
+ * never traced, then by closeness to the crosshair plus how long ago they were traced. A vein is visible
+ * when one of its first few exposed blocks is, so the cost follows the number of veins rather than blocks.
+ * The outcome is published as an immutable {@link Result} that the render thread reads without locking,
+ * together with the mesh of every vein, so drawing a frame allocates nothing and builds nothing.
+ */
+public class OreVisibility {
+    private static final Logger LOGGER = Logger.getLogger(OreVisibility.class.getName());
+
+    private static final long ROUND_MILLIS = 50;
+    private static final long BUDGET_NANOS = 4_000_000;
+    // A vein this long untraced is as urgent as one under the crosshair
+    private static final long REFRESH_MILLIS = 2500;
+    private static final int MAX_RAYS_PER_VEIN = 8;
+
+    /** Veins, their meshes and a bitset of the visible ones, by index. */
+    public static final class Result {
+        public static final Result EMPTY = new Result(new OreVein[0], new long[0], new CellMesh[0]);
+
+        private final OreVein[] veins;
+        private final long[] visible;
+        private final CellMesh[] meshes;
+
+        private Result(OreVein[] veins, long[] visible, CellMesh[] meshes) {
+            this.veins = veins;
+            this.visible = visible;
+            this.meshes = meshes;
+        }
+
+        public int size() {
+            return veins.length;
+        }
+
+        public OreVein vein(int index) {
+            return veins[index];
+        }
+
+        public boolean isVisible(int index) {
+            return (visible[index >>> 6] & 1L << index) != 0;
+        }
+
+        /** The ores of the vein as one surface. */
+        public CellMesh mesh(int index) {
+            return meshes[index];
+        }
+    }
+
+    private final Collection<OreVein> veins;
+    private final BlockSource blocks = SnapshotCapture.CLIENT;
+    private final ScanSignal wakeup = new ScanSignal();
+    // Last trace per vein id: time in millis shifted left once, visibility in the low bit
+    private Long2LongOpenHashMap traced = newTraceMap(0);
+    private volatile Result result = Result.EMPTY;
+    // Bumped by clear(), a round started before it does not publish
+    private int generation;
+    private Thread thread;
+
+    /** {@code veins} is a live, thread-safe view, e.g. the values of a concurrent map. */
+    public OreVisibility(Collection<OreVein> veins) {
+        this.veins = veins;
+    }
+
+    public Result get() {
+        return result;
+    }
+
+    /** Wakes the worker early, e.g. after new veins were found. */
+    public void signal() {
+        wakeup.signal();
+    }
+
+    /** Drops the current result right away, e.g. after the veins were cleared, and starts a new round. */
+    public void clear() {
+        synchronized (this) {
+            generation++;
+            result = Result.EMPTY;
+        }
+        wakeup.signal();
+    }
+
+    /** Starts the worker. It lives until {@link #stop}, across world changes, and idles while in no world. */
+    public void start() {
+        stop();
+        traced = newTraceMap(0);
+
+        thread = new Thread(() -> {
+            while (true) {
+                try {
+                    if (mc.world != null && mc.player != null) round();
+                    wakeup.await(ROUND_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Unexpected error in ore visibility thread", e);
+                }
+            }
+        }, "OreEsp-VisibilityThread");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stops the worker and waits for it, so a following {@link #start} never runs two rounds at once. */
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+        clear();
+    }
+
+    private void round() throws InterruptedException {
+        Camera camera = mc.gameRenderer.getCamera();
+        Vec3d eye = camera.getPos();
+        if (eye == null) return;
+
+        int startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+        OreVein[] current = veins.toArray(new OreVein[0]);
+        int count = current.length;
+        if (count == 0) {
+            publish(Result.EMPTY, startGeneration);
+            traced = newTraceMap(0);
+            return;
+        }
+
+        int minY = (int) Math.floor(eye.y), maxY = minY;
+        int blockCount = 0;
+        for (OreVein vein : current) {
+            minY = Math.min(minY, vein.getMinY());
+            maxY = Math.max(maxY, vein.getMaxY());
+            blockCount += vein.size();
+        }
+
+        // Look direction, same convention as Entity.getRotationVector
+        double yaw = Math.toRadians(camera.getYaw());
+        double pitch = Math.toRadians(camera.getPitch());
+        double lookX = -Math.sin(yaw) * Math.cos(pitch);
+        double lookY = -Math.sin(pitch);
+        double lookZ = Math.cos(yaw) * Math.cos(pitch);
+
+        // Priority in the high half of each key, vein index in the low half, sorted so the most urgent come last
+        long now = System.currentTimeMillis();
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            OreVein vein = current[i];
+            long last = traced.get(vein.getId());
+            int priority;
+            if (last < 0) {
+                priority = Integer.MAX_VALUE;
+            } else {
+                double dx = (vein.getMinX() + vein.getMaxX() + 1) / 2.0 - eye.x;
+                double dy = (vein.getMinY() + vein.getMaxY() + 1) / 2.0 - eye.y;
+                double dz = (vein.getMinZ() + vein.getMaxZ() + 1) / 2.0 - eye.z;
+                double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                double facing = length > 0 ? (dx * lookX + dy * lookY + dz * lookZ) / length : 1;
+                double age = Math.min(100, (double) (now - (last >>> 1)) / REFRESH_MILLIS);
+                priority = (int) ((facing + 1 + age) * 1_000_000);
+            }
+            order[i] = (long) priority << 32 | i;
+        }
+        Arrays.sort(order);
+
+        // Filled in per traced vein with the columns its rays cross; veins left for a later round capture nothing
+        RayPath path = new RayPath(eye.x, eye.z, minY - 1, maxY + 1);
+        VisibilityRoundEvent event = new VisibilityRoundEvent();
+        event.begin();
+        int raycasts = 0;
+
+        long deadline = System.nanoTime() + BUDGET_NANOS;
+        Long2LongOpenHashMap next = newTraceMap(count);
+        long[] visible = new long[(count + 63) >>> 6];
+        boolean budgetLeft = true;
+        for (int n = count - 1; n >= 0; n--) {
+            int i = (int) order[n];
+            OreVein vein = current[i];
+            long state = traced.get(vein.getId());
+
+            // Never-traced veins are always traced, everything else while the budget lasts
+            if (state < 0 || budgetLeft) {
+                WorldSnapshot world = path.capture(vein);
+                boolean canSee = false;
+                int rays = 0;
+                for (int m = 0; m < vein.size() && rays < MAX_RAYS_PER_VEIN && !canSee; m++) {
+                    long ore = vein.member(m);
+                    int x = PackedPos.x(ore), y = PackedPos.y(ore), z = PackedPos.z(ore);
+                    // Buried blocks of the vein cannot be seen, only exposed ones are worth a ray
+                    if (!OreKernels.isExposed(world, x, y, z)) continue;
+                    canSee = VoxelRay.canSee(world, eye.x, eye.y, eye.z, x, y, z);
+                    rays++;
+                }
+                state = now << 1 | (canSee ? 1 : 0);
+                raycasts += rays;
+                budgetLeft = System.nanoTime() < deadline;
+            }
+
+            next.put(vein.getId(), state);
+            if ((state & 1) != 0) visible[i >>> 6] |= 1L << i;
+        }
+        traced = next;
+
+        ScanStats.get().raycasts.add(raycasts);
+        if (event.shouldCommit()) {
+            event.veins = count;
+            event.ores = blockCount;
+            event.raycasts = raycasts;
+            event.commit();
+        }
+
+        // Republish only on change; meshes are built here for new veins only, the render thread just draws
+        Result previous = result;
+        boolean sameVeins = Arrays.equals(previous.veins, current);
+        if (!sameVeins || !Arrays.equals(previous.visible, visible)) {
+            publish(new Result(current, visible, sameVeins ? previous.meshes : buildMeshes(previous, current)), startGeneration);
+        }
+    }
+
+    /**
+     * The chunk columns the rays of one round cross, captured as the veins are traced. The rays from the eye to
+     * any block of a vein stay within the vein's radius of the segment from the eye to its center, so only
+     * the columns that close to that segment are captured, each once per round.
+     */
+    private final class RayPath {
+        // Half the diagonal of a chunk column plus the neighbours exposure checks read
+        private static final double COLUMN_MARGIN = 8 * Math.sqrt(2) + 2;
+
+        private final double eyeX, eyeZ;
+        private final int minY, maxY;
+        private final Long2ObjectOpenHashMap<ChunkSnapshot> chunks = new Long2ObjectOpenHashMap<>();
+        // Columns already asked for this round, including the ones that were not loaded
+        private final LongOpenHashSet requested = new LongOpenHashSet();
+        // Reads the chunks map, which only grows, and only on this thread
+        private final WorldSnapshot world = new WorldSnapshot(chunks);
+
+        private RayPath(double eyeX, double eyeZ, int minY, int maxY) {
+            this.eyeX = eyeX;
+            this.eyeZ = eyeZ;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        WorldSnapshot capture(OreVein vein) throws InterruptedException {
+            double centerX = (vein.getMinX() + vein.getMaxX() + 1) / 2.0;
+            double centerZ = (vein.getMinZ() + vein.getMaxZ() + 1) / 2.0;
+            double reach = Math.hypot(vein.getMaxX() - vein.getMinX() + 1, vein.getMaxZ() - vein.getMinZ() + 1) / 2 + COLUMN_MARGIN;
+
+            int eyeBlockX = (int) Math.floor(eyeX), eyeBlockZ = (int) Math.floor(eyeZ);
+            int minChunkX = Math.min(eyeBlockX, vein.getMinX() - 1) >> 4, maxChunkX = Math.max(eyeBlockX, vein.getMaxX() + 1) >> 4;
+            int minChunkZ = Math.min(eyeBlockZ, vein.getMinZ() - 1) >> 4, maxChunkZ = Math.max(eyeBlockZ, vein.getMaxZ() + 1) >> 4;
+            for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+                for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                    long key = ChunkSnapshot.key(cx, cz);
+                    if (requested.contains(key)) continue;
+                    if (distanceToSegment((cx << 4) + 8, (cz << 4) + 8, centerX, centerZ) > reach) continue;
+
+                    requested.add(key);
+                    ChunkSnapshot chunk = blocks.capture(cx, cz, cx, cz, minY, maxY).getChunk(cx, cz);
+                    if (chunk != null) chunks.put(key, chunk);
+                }
+            }
+            return world;
+        }
+
+        // Horizontal distance from a point to the segment from the eye to (toX, toZ)
+        private double distanceToSegment(double x, double z, double toX, double toZ) {
+            double dx = toX - eyeX, dz = toZ - eyeZ;
+            double lengthSq = dx * dx + dz * dz;
+            double t = lengthSq > 0 ? Math.max(0, Math.min(1, ((x - eyeX) * dx + (z - eyeZ) * dz) / lengthSq)) : 0;
+            return Math.hypot(x - eyeX - t * dx, z - eyeZ - t * dz);
+        }
+    }
+
+    private synchronized void publish(Result next, int startGeneration) {
+        if (generation == startGeneration && next != result) result = next;
+    }
+
+    // The ores of a vein render as one surface instead of a box each; veins kept from the last result keep their mesh
+    private static CellMesh[] buildMeshes(Result previous, OreVein[] current) {
+        Map<OreVein, CellMesh> known = new IdentityHashMap<>(previous.size());
+        for (int i = 0; i < previous.size(); i++) known.put(previous.veins[i], previous.meshes[i]);
+
+        CellMesh[] meshes = new CellMesh[current.length];
+        for (int i = 0; i < current.length; i++) {
+            OreVein vein = current[i];
+            CellMesh mesh = known.get(vein);
+            if (mesh == null) {
+                LongOpenHashSet cells = new LongOpenHashSet(vein.size());
+                for (int m = 0; m < vein.size(); m++) cells.add(vein.member(m));
+                mesh = CellMesh.build(cells, 1);
+            }
+            meshes[i] = mesh;
+        }
+        return meshes;
+    }
+
+    private static Long2LongOpenHashMap newTraceMap(int expected) {
+        Long2LongOpenHashMap map = new Long2LongOpenHashMap(expected);
+        map.defaultReturnValue(-1);
+        return map;
+    }
+}
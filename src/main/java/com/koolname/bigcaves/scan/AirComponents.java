@@ -0,0 +1,344 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Connected-component labeling of air over a scan region.
+ * <p>
+ * During a labeling pass every air block is flooded at most once: the first candidate volume that asks
+ * about a block floods its whole component, and every other volume whose center lies in that component
+ * gets the same answer from a lookup. Each component records its size, bounding box and the volumes of the
+ * grid it passes through.
+ * <p>
+ * A fill that stops at the node limit leaves its frontier behind; a later fill running into it continues
+ * the same cave and is merged into the first, so a cave larger than the limit is still one component. A
+ * fill that runs into the frontiers of several earlier ones joins them all into one; the others are gone
+ * from {@link #getComponents()} and {@link #find} maps their ids to the one they joined.
+ * <p>
+ * Component ids come from the grid, not from where the fill sphere happens to cut the cave: a cave takes the
+ * id it had in an earlier pass at any volume center it still contains, and a new cave takes the packed
+ * position of its lowest volume center (smallest y, then z, then x). The grid is world-aligned, so a cave
+ * keeps its id while the player moves as long as it keeps one of its centers in range. Ids are unique
+ * within a pass: two truncated parts the earlier pass knew as one cave are merged again, otherwise the
+ * later one falls back to its lowest center.
+ */
+public class AirComponents implements FloodFill.NodeVisitor {
+    public static final class Component {
+        private long id = Long.MAX_VALUE;
+        // Lowest volume center, and the smallest id an earlier pass gave any of the centers
+        private int minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, minX = Integer.MAX_VALUE;
+        private long knownId = Long.MAX_VALUE;
+        // Set once merged into the component of an earlier fill of the same cave
+        private Component mergedInto;
+        private int boxMinX = Integer.MAX_VALUE, boxMinY = Integer.MAX_VALUE, boxMinZ = Integer.MAX_VALUE;
+        private int boxMaxX = Integer.MIN_VALUE, boxMaxY = Integer.MIN_VALUE, boxMaxZ = Integer.MIN_VALUE;
+        private int size;
+        private boolean truncated;
+        private final long[] volumes;
+
+        private Component(int volumeCount) {
+            volumes = new long[(volumeCount + 63) >>> 6];
+        }
+
+        /** A component known only by its summary, e.g. one read back from disk; it passes through no volumes. */
+        public static Component summary(long id, int size, boolean truncated, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            Component component = new Component(0);
+            component.id = id;
+            component.minX = PackedPos.x(id);
+            component.minY = PackedPos.y(id);
+            component.minZ = PackedPos.z(id);
+            component.size = size;
+            component.truncated = truncated;
+            component.boxMinX = minX;
+            component.boxMinY = minY;
+            component.boxMinZ = minZ;
+            component.boxMaxX = maxX;
+            component.boxMaxY = maxY;
+            component.boxMaxZ = maxZ;
+            return component;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Whether the component is part of one larger than the node limit, either because its fill stopped
+         * at the limit or because it is the remainder of such a fill.
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public int getMinX() { return boxMinX; }
+        public int getMinY() { return boxMinY; }
+        public int getMinZ() { return boxMinZ; }
+        public int getMaxX() { return boxMaxX; }
+        public int getMaxY() { return boxMaxY; }
+        public int getMaxZ() { return boxMaxZ; }
+
+        /** Whether the component passes through the grid volume with the given index. */
+        public boolean containsVolume(int volumeIndex) {
+            return volumeIndex >>> 6 < volumes.length && (volumes[volumeIndex >>> 6] & 1L << volumeIndex) != 0;
+        }
+
+        public int volumeCount() {
+            int count = 0;
+            for (long word : volumes) count += Long.bitCount(word);
+            return count;
+        }
+    }
+
+    private final FloodFill fill = new FloodFill();
+    private final List<Component> components = new ArrayList<>();
+    // Frontier nodes of truncated fills in this pass, by the component that left them
+    private final Long2ObjectOpenHashMap<Component> frontierOwners = new Long2ObjectOpenHashMap<>();
+    // Components of this pass by id, including ids of those merged away
+    private final Long2ObjectOpenHashMap<Component> byId = new Long2ObjectOpenHashMap<>();
+    // Earlier components whose frontier the current fill ran into
+    private final List<Component> reached = new ArrayList<>();
+    // Id of the cave at each volume center as of the last pass that labeled it, by packed center position
+    private Long2LongOpenHashMap knownIds = newKnownIds();
+
+    private int gridX, gridY, gridZ, step, half;
+    private int volumesX, volumesY, volumesZ;
+    private Component[] centerComponents = new Component[0];
+    private Component current;
+
+    /**
+     * Starts a labeling pass. Fills stay inside the sphere around the given center; volumes form a grid of
+     * {@code volumesX * volumesY * volumesZ} cubes of size {@code step} starting at the grid origin.
+     */
+    public void begin(int centerX, int centerY, int centerZ, int radius,
+                      int gridX, int gridY, int gridZ, int step, int volumesX, int volumesY, int volumesZ) {
+        this.gridX = gridX;
+        this.gridY = gridY;
+        this.gridZ = gridZ;
+        this.step = step;
+        this.half = step / 2;
+        this.volumesX = volumesX;
+        this.volumesY = volumesY;
+        this.volumesZ = volumesZ;
+
+        int volumes = volumesX * volumesY * volumesZ;
+        if (centerComponents.length < volumes) centerComponents = new Component[volumes];
+        else Arrays.fill(centerComponents, 0, volumes, null);
+        components.clear();
+        frontierOwners.clear();
+        byId.clear();
+
+        fill.setSphere(centerX, centerY, centerZ, radius);
+        fill.beginRetaining();
+        fill.resetStats();
+    }
+
+    /**
+     * Ends the pass and remembers the id of the cave at every center labeled in it. Centers outside the grid
+     * are forgotten, a cave found there again later counts as new.
+     */
+    public void end() {
+        fill.endRetaining();
+        frontierOwners.clear();
+
+        int volumes = volumesX * volumesY * volumesZ;
+        Long2LongOpenHashMap next = newKnownIds();
+        for (int index = 0; index < volumes; index++) {
+            long center = center(index);
+            Component component = centerComponents[index];
+            if (component != null) next.put(center, resolve(component).id);
+            else if (knownIds.containsKey(center)) next.put(center, knownIds.get(center));
+        }
+        knownIds = next;
+    }
+
+    private static Long2LongOpenHashMap newKnownIds() {
+        Long2LongOpenHashMap ids = new Long2LongOpenHashMap();
+        ids.defaultReturnValue(Long.MAX_VALUE);
+        return ids;
+    }
+
+    // Packed position of the center of the volume with the given index
+    private long center(int index) {
+        int vx = index % volumesX, vz = index / volumesX % volumesZ, vy = index / (volumesX * volumesZ);
+        return PackedPos.pack(gridX + vx * step + half, gridY + vy * step + half, gridZ + vz * step + half);
+    }
+
+    private static Component resolve(Component component) {
+        while (component.mergedInto != null) component = component.mergedInto;
+        return component;
+    }
+
+    /** Index of the grid volume whose origin is given, or -1 if it is outside the grid. */
+    public int volumeIndex(int originX, int originY, int originZ) {
+        int vx = Math.floorDiv(originX - gridX, step);
+        int vy = Math.floorDiv(originY - gridY, step);
+        int vz = Math.floorDiv(originZ - gridZ, step);
+        if (vx < 0 || vy < 0 || vz < 0 || vx >= volumesX || vy >= volumesY || vz >= volumesZ) return -1;
+        return (vy * volumesZ + vz) * volumesX + vx;
+    }
+
+    /**
+     * Returns the component through the center of the given volume if it is a cave: at least {@code minSize}
+     * blocks, or {@link Component#isTruncated truncated} by the node limit, itself or through a fill it
+     * continued, and so possibly larger than counted. A fill stopped by the edge of the region is not
+     * truncated and counts with the blocks inside it only.
+     */
+    public Component caveAtCenter(WorldSnapshot world, int originX, int originY, int originZ, int nodeLimit, int minSize) {
+        Component component = componentAtCenter(world, originX, originY, originZ, nodeLimit);
+        if (component == null) return null;
+        return component.isTruncated() || component.getSize() >= minSize ? component : null;
+    }
+
+    /**
+     * Returns the component containing the center of the given volume, flooding it first if no earlier
+     * fill reached it. Returns {@code null} if the center is not air or lies outside the region.
+     */
+    public Component componentAtCenter(WorldSnapshot world, int originX, int originY, int originZ, int nodeLimit) {
+        int index = volumeIndex(originX, originY, originZ);
+        if (index < 0) return null;
+        if (centerComponents[index] != null) return resolve(centerComponents[index]);
+
+        // Every block a fill marks is reported to visit(), so a visited center always has its component
+        int x = originX + half, y = originY + half, z = originZ + half;
+        if (fill.isVisited(x, y, z)) return null;
+
+        // Allocated by the first visit, a center that is not air costs nothing
+        int size = fill.fill(world, x, y, z, nodeLimit, this);
+        Component component = current;
+        current = null;
+        if (size == 0) {
+            knownIds.remove(center(index));
+            return null;
+        }
+
+        component.size = size;
+        component.truncated = size >= nodeLimit || fill.reachedTruncated();
+        if (!reached.isEmpty()) {
+            Component into = reached.get(0);
+            for (int i = 1; i < reached.size(); i++) into = join(resolve(into), resolve(reached.get(i)));
+            reached.clear();
+            return merge(component, into);
+        }
+
+        Component known = component.knownId != Long.MAX_VALUE ? find(component.knownId) : null;
+        if (known != null && component.truncated && known.truncated) return merge(component, known);
+
+        if (component.knownId != Long.MAX_VALUE && known == null) component.id = component.knownId;
+        else component.id = freeCenterId(component);
+        // Every center taken, only when centers changed hands between passes: the earlier pass knew them as one cave
+        if (component.id == Long.MAX_VALUE) {
+            return merge(component, known != null ? known : find(PackedPos.pack(component.minX, component.minY, component.minZ)));
+        }
+        components.add(component);
+        byId.put(component.id, component);
+        return component;
+    }
+
+    // Packed position of the lowest center of the component no other component uses as its id. Volume
+    // indices run by y, then z, then x, so the first free one in index order is the lowest.
+    private long freeCenterId(Component component) {
+        long lowest = PackedPos.pack(component.minX, component.minY, component.minZ);
+        if (find(lowest) == null) return lowest;
+        for (int index = 0; index < volumesX * volumesY * volumesZ; index++) {
+            if (centerComponents[index] != component) continue;
+            long center = center(index);
+            if (find(center) == null) return center;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * The component with the given id in the current pass, or the one it was merged into; {@code null} if
+     * no component has that id. Valid until the next {@link #begin}.
+     */
+    public Component find(long id) {
+        Component component = byId.get(id);
+        return component != null ? resolve(component) : null;
+    }
+
+    // Two components of this pass turned out to be one cave; the one with the smaller id stays
+    private Component join(Component a, Component b) {
+        if (a == b) return a;
+        Component into = a.id <= b.id ? a : b, part = into == a ? b : a;
+        components.remove(part);
+        return merge(part, into);
+    }
+
+    // Adds a fill that continued a truncated one to the component of that fill, which keeps its id
+    private Component merge(Component part, Component into) {
+        into.size += part.size;
+        into.truncated = true;
+        into.boxMinX = Math.min(into.boxMinX, part.boxMinX);
+        into.boxMinY = Math.min(into.boxMinY, part.boxMinY);
+        into.boxMinZ = Math.min(into.boxMinZ, part.boxMinZ);
+        into.boxMaxX = Math.max(into.boxMaxX, part.boxMaxX);
+        into.boxMaxY = Math.max(into.boxMaxY, part.boxMaxY);
+        into.boxMaxZ = Math.max(into.boxMaxZ, part.boxMaxZ);
+        for (int i = 0; i < part.volumes.length; i++) into.volumes[i] |= part.volumes[i];
+        part.mergedInto = into;
+        return into;
+    }
+
+    @Override
+    public void visit(int x, int y, int z) {
+        Component c = current;
+        if (c == null) current = c = new Component(volumesX * volumesY * volumesZ);
+
+        if (x < c.boxMinX) c.boxMinX = x;
+        if (y < c.boxMinY) c.boxMinY = y;
+        if (z < c.boxMinZ) c.boxMinZ = z;
+        if (x > c.boxMaxX) c.boxMaxX = x;
+        if (y > c.boxMaxY) c.boxMaxY = y;
+        if (z > c.boxMaxZ) c.boxMaxZ = z;
+
+        int vx = Math.floorDiv(x - gridX, step);
+        int vy = Math.floorDiv(y - gridY, step);
+        int vz = Math.floorDiv(z - gridZ, step);
+        if (vx < 0 || vy < 0 || vz < 0 || vx >= volumesX || vy >= volumesY || vz >= volumesZ) return;
+
+        int index = (vy * volumesZ + vz) * volumesX + vx;
+        c.volumes[index >>> 6] |= 1L << index;
+
+        if (x - gridX - vx * step == half && y - gridY - vy * step == half && z - gridZ - vz * step == half) {
+            centerComponents[index] = c;
+            if (y < c.minY || (y == c.minY && (z < c.minZ || (z == c.minZ && x < c.minX)))) {
+                c.minY = y;
+                c.minZ = z;
+                c.minX = x;
+            }
+            long known = knownIds.get(PackedPos.pack(x, y, z));
+            if (known < c.knownId) c.knownId = known;
+        }
+    }
+
+    @Override
+    public void frontier(int x, int y, int z) {
+        frontierOwners.put(PackedPos.pack(x, y, z), current);
+    }
+
+    @Override
+    public void reachedFrontier(int x, int y, int z) {
+        Component owner = frontierOwners.get(PackedPos.pack(x, y, z));
+        if (owner == null) return;
+        owner = resolve(owner);
+        // A handful at most, usually one
+        if (!reached.contains(owner)) reached.add(owner);
+    }
+
+    public List<Component> getComponents() {
+        return components;
+    }
+
+    public FloodFill getFloodFill() {
+        return fill;
+    }
+}
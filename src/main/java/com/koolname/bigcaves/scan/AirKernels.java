@@ -0,0 +1,53 @@
+package com.koolname.bigcaves.scan;
+
+/**
+ * Air checks run on every candidate volume of a cave scan. Volumes are cubes given by their lowest corner
+ * and edge length; blocks outside the snapshot count as not air.
+ */
+public final class AirKernels {
+    private AirKernels() {
+    }
+
+    /**
+     * Whether the volume can hold a cave: below the sky ceiling in every column at its center height, at
+     * least {@code threshold} air blocks, and air at the center, where its component is labeled from. The
+     * ceiling test reads no blocks, so surface volumes are dropped almost for free.
+     */
+    public static boolean isCaveVolume(WorldSnapshot world, int x0, int y0, int z0, int size, int threshold) {
+        int half = size / 2;
+        if (!world.isBelowCeiling(x0, z0, x0 + size - 1, z0 + size - 1, y0 + half)) return false;
+        if (countAir(world, x0, y0, z0, size, threshold) < threshold) return false;
+        return world.isAir(x0 + half, y0 + half, z0 + half);
+    }
+
+    /**
+     * Counts the air blocks of the volume exactly, returning early with a partial count once the threshold
+     * can no longer be reached. Each overlapped section answers from its {@link SectionSnapshot#airCount(int,
+     * int, int, int, int, int) prefix sums}, so the cost grows with the number of sections rather than
+     * blocks, whether or not the volume lines up with them.
+     */
+    public static int countAir(WorldSnapshot world, int x0, int y0, int z0, int size, int threshold) {
+        int air = 0;
+        int remaining = size * size * size;
+        int x1 = x0 + size - 1, y1 = y0 + size - 1, z1 = z0 + size - 1;
+
+        for (int sx = x0 >> 4; sx <= x1 >> 4; sx++) {
+            for (int sy = y0 >> 4; sy <= y1 >> 4; sy++) {
+                for (int sz = z0 >> 4; sz <= z1 >> 4; sz++) {
+                    int minX = Math.max(x0, sx << 4), maxX = Math.min(x1, (sx << 4) + 15);
+                    int minY = Math.max(y0, sy << 4), maxY = Math.min(y1, (sy << 4) + 15);
+                    int minZ = Math.max(z0, sz << 4), maxZ = Math.min(z1, (sz << 4) + 15);
+
+                    SectionSnapshot section = world.getSection(sx, sy, sz);
+                    if (section != null) {
+                        air += section.airCount(minX & 15, minY & 15, minZ & 15, maxX & 15, maxY & 15, maxZ & 15);
+                    }
+
+                    remaining -= (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+                    if (air + remaining < threshold) return air;
+                }
+            }
+        }
+        return air;
+    }
+}
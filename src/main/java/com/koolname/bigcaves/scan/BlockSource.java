@@ -0,0 +1,27 @@
+package com.koolname.bigcaves.scan;
+
+/**
+ * Where scans get their blocks from: the live client world through {@link SnapshotCapture}, or a
+ * {@link ChunkRecording} when running headless.
+ */
+@FunctionalInterface
+public interface BlockSource {
+    /**
+     * Returns a snapshot of every available chunk in the given chunk range, with at least the sections
+     * overlapping {@code minY..maxY}.
+     */
+    WorldSnapshot capture(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int minY, int maxY) throws InterruptedException;
+
+    /**
+     * {@link ChunkSnapshot#contentHash Content hash} of sections {@code minSectionY} to {@code maxSectionY} of a
+     * chunk, taken from {@code snapshot} when it holds all of them, so the hash describes the blocks the
+     * results came from, and from a new capture otherwise. Returns 0 when the chunk is not available.
+     */
+    default long contentHash(WorldSnapshot snapshot, int chunkX, int chunkZ, int minSectionY, int maxSectionY) throws InterruptedException {
+        ChunkSnapshot chunk = snapshot != null ? snapshot.getChunk(chunkX, chunkZ) : null;
+        if (chunk == null || !chunk.hasSections(minSectionY, maxSectionY)) {
+            chunk = capture(chunkX, chunkZ, chunkX, chunkZ, minSectionY << 4, (maxSectionY << 4) + 15).getChunk(chunkX, chunkZ);
+        }
+        return chunk == null ? 0 : chunk.contentHash(minSectionY, maxSectionY);
+    }
+}
@@ -0,0 +1,151 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Thread-safe set of {@link PackedPos packed} block positions grouped by chunk column.
+ * <p>
+ * Positions of one chunk can be checked or dropped together, so unloading or leaving a chunk costs as
+ * much as the chunk holds rather than a walk over every stored position.
+ */
+public class ChunkIndex {
+    public interface ChunkPredicate {
+        boolean test(int chunkX, int chunkZ);
+    }
+
+    private final ConcurrentHashMap<Long, LongOpenHashSet> chunks = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public boolean add(int x, int y, int z) {
+        long pos = PackedPos.pack(x, y, z);
+        boolean[] added = new boolean[1];
+        // compute() keeps the chunk's set from being dropped while the position goes in
+        chunks.compute(ChunkSnapshot.key(x >> 4, z >> 4), (key, set) -> {
+            if (set == null) set = new LongOpenHashSet();
+            synchronized (set) {
+                added[0] = set.add(pos);
+            }
+            return set;
+        });
+        if (added[0]) size.incrementAndGet();
+        return added[0];
+    }
+
+    public boolean remove(int x, int y, int z) {
+        long pos = PackedPos.pack(x, y, z);
+        boolean[] removed = new boolean[1];
+        chunks.computeIfPresent(ChunkSnapshot.key(x >> 4, z >> 4), (key, set) -> {
+            synchronized (set) {
+                removed[0] = set.remove(pos);
+                return set.isEmpty() ? null : set;
+            }
+        });
+        if (removed[0]) size.decrementAndGet();
+        return removed[0];
+    }
+
+    public boolean contains(int x, int y, int z) {
+        LongOpenHashSet set = chunks.get(ChunkSnapshot.key(x >> 4, z >> 4));
+        if (set == null) return false;
+        synchronized (set) {
+            return set.contains(PackedPos.pack(x, y, z));
+        }
+    }
+
+    public boolean contains(long pos) {
+        return contains(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos));
+    }
+
+    /** Positions stored for one chunk. */
+    public long[] getChunk(int chunkX, int chunkZ) {
+        LongOpenHashSet set = chunks.get(ChunkSnapshot.key(chunkX, chunkZ));
+        if (set == null) return new long[0];
+        synchronized (set) {
+            long[] positions = new long[set.size()];
+            int i = 0;
+            for (LongIterator it = set.iterator(); it.hasNext(); ) positions[i++] = it.nextLong();
+            return positions;
+        }
+    }
+
+    /** Drops every position in the chunk and returns how many there were. */
+    public int removeChunk(int chunkX, int chunkZ) {
+        LongOpenHashSet set = chunks.remove(ChunkSnapshot.key(chunkX, chunkZ));
+        if (set == null) return 0;
+        int removed;
+        synchronized (set) {
+            removed = set.size();
+        }
+        size.addAndGet(-removed);
+        return removed;
+    }
+
+    /** Drops every chunk matching the predicate and returns how many positions went with them. */
+    public int removeChunksIf(ChunkPredicate predicate) {
+        int removed = 0;
+        for (long key : chunks.keySet()) {
+            if (predicate.test(ChunkSnapshot.keyX(key), ChunkSnapshot.keyZ(key))) {
+                removed += removeChunk(ChunkSnapshot.keyX(key), ChunkSnapshot.keyZ(key));
+            }
+        }
+        return removed;
+    }
+
+    /** Drops the positions of one chunk that match the predicate and returns how many were dropped. */
+    public int removeIf(int chunkX, int chunkZ, LongPredicate predicate) {
+        int[] removed = new int[1];
+        chunks.computeIfPresent(ChunkSnapshot.key(chunkX, chunkZ), (key, set) -> {
+            synchronized (set) {
+                for (LongIterator it = set.iterator(); it.hasNext(); ) {
+                    if (predicate.test(it.nextLong())) {
+                        it.remove();
+                        removed[0]++;
+                    }
+                }
+                return set.isEmpty() ? null : set;
+            }
+        });
+        size.addAndGet(-removed[0]);
+        return removed[0];
+    }
+
+    /** Visits every position; positions added or removed meanwhile may or may not be seen. */
+    public void forEach(LongConsumer consumer) {
+        for (LongOpenHashSet set : chunks.values()) {
+            synchronized (set) {
+                for (LongIterator it = set.iterator(); it.hasNext(); ) consumer.accept(it.nextLong());
+            }
+        }
+    }
+
+    public long[] toArray() {
+        long[] positions = new long[Math.max(16, size.get())];
+        int count = 0;
+        for (LongOpenHashSet set : chunks.values()) {
+            synchronized (set) {
+                if (count + set.size() > positions.length) positions = Arrays.copyOf(positions, Math.max(positions.length * 2, count + set.size()));
+                for (LongIterator it = set.iterator(); it.hasNext(); ) positions[count++] = it.nextLong();
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int chunkCount() {
+        return chunks.size();
+    }
+
+    public void clear() {
+        for (long key : chunks.keySet()) removeChunk(ChunkSnapshot.keyX(key), ChunkSnapshot.keyZ(key));
+    }
+}
@@ -0,0 +1,162 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Chunk sections of a live session saved to a file and replayed as a {@link BlockSource}, so scans can be
+ * profiled and compared on identical data without a client.
+ * <p>
+ * The file is gzipped: magic, version, the name of every state id used (raw ids differ between game
+ * versions, names do not), then each chunk with its sections as palette plus one byte or short per block.
+ * Uniform sections store their palette only.
+ */
+public class ChunkRecording implements BlockSource {
+    private static final int MAGIC = 0x42435243; // "BCRC"
+    private static final int VERSION = 1;
+
+    private final Long2ObjectOpenHashMap<ChunkSnapshot> chunks;
+    private final Map<Integer, String> stateNames;
+
+    private ChunkRecording(Long2ObjectOpenHashMap<ChunkSnapshot> chunks, Map<Integer, String> stateNames) {
+        this.chunks = chunks;
+        this.stateNames = stateNames;
+    }
+
+    /** Writes the chunks, naming every state id they use with {@code stateName}. */
+    public static void write(Path file, Collection<ChunkSnapshot> chunks, IntFunction<String> stateName) throws IOException {
+        BitSet used = new BitSet();
+        for (ChunkSnapshot chunk : chunks) {
+            for (int sy = chunk.getBottomSectionY(); sy <= chunk.getTopSectionY(); sy++) {
+                SectionSnapshot section = chunk.getSection(sy);
+                for (int i = 0; i < section.paletteSize(); i++) used.set(section.paletteId(i));
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(used.cardinality());
+            for (int id = used.nextSetBit(0); id >= 0; id = used.nextSetBit(id + 1)) {
+                out.writeInt(id);
+                out.writeUTF(stateName.apply(id));
+            }
+
+            out.writeInt(chunks.size());
+            for (ChunkSnapshot chunk : chunks) {
+                out.writeInt(chunk.getChunkX());
+                out.writeInt(chunk.getChunkZ());
+                out.writeInt(chunk.getBottomSectionY());
+                out.writeShort(chunk.getTopSectionY() - chunk.getBottomSectionY() + 1);
+                for (int sy = chunk.getBottomSectionY(); sy <= chunk.getTopSectionY(); sy++) {
+                    writeSection(out, chunk.getSection(sy));
+                }
+            }
+        }
+    }
+
+    public static ChunkRecording read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a chunk recording: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported chunk recording version " + version);
+
+            int names = in.readInt();
+            Map<Integer, String> stateNames = new HashMap<>(names * 2);
+            for (int i = 0; i < names; i++) stateNames.put(in.readInt(), in.readUTF());
+
+            int count = in.readInt();
+            Long2ObjectOpenHashMap<ChunkSnapshot> chunks = new Long2ObjectOpenHashMap<>(count);
+            short[] indices = new short[SectionSnapshot.VOLUME];
+            for (int i = 0; i < count; i++) {
+                int chunkX = in.readInt(), chunkZ = in.readInt(), bottom = in.readInt();
+                SectionSnapshot[] sections = new SectionSnapshot[in.readShort()];
+                for (int s = 0; s < sections.length; s++) sections[s] = readSection(in, indices);
+                chunks.put(ChunkSnapshot.key(chunkX, chunkZ), new ChunkSnapshot(chunkX, chunkZ, bottom, sections));
+            }
+            return new ChunkRecording(chunks, stateNames);
+        }
+    }
+
+    /** Serves the recorded chunks in the range; the recording is immutable, so nothing is copied. */
+    @Override
+    public WorldSnapshot capture(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int minY, int maxY) {
+        Long2ObjectOpenHashMap<ChunkSnapshot> range = new Long2ObjectOpenHashMap<>();
+        for (ChunkSnapshot chunk : chunks.values()) {
+            if (chunk.getChunkX() >= minChunkX && chunk.getChunkX() <= maxChunkX && chunk.getChunkZ() >= minChunkZ && chunk.getChunkZ() <= maxChunkZ) {
+                range.put(chunk.key(), chunk);
+            }
+        }
+        return new WorldSnapshot(range);
+    }
+
+    /** Every recorded chunk. */
+    public WorldSnapshot getWorld() {
+        return new WorldSnapshot(chunks);
+    }
+
+    public Collection<ChunkSnapshot> getChunks() {
+        return chunks.values();
+    }
+
+    /** Name the state id had when recorded, or {@code null} if it does not occur. */
+    public String getStateName(int stateId) {
+        return stateNames.get(stateId);
+    }
+
+    /** Ids of the recorded states whose name matches, e.g. to pick the ores to look for. */
+    public BitSet statesMatching(Predicate<String> name) {
+        BitSet states = new BitSet();
+        for (Map.Entry<Integer, String> entry : stateNames.entrySet()) {
+            if (name.test(entry.getValue())) states.set(entry.getKey());
+        }
+        return states;
+    }
+
+    private static void writeSection(DataOutputStream out, SectionSnapshot section) throws IOException {
+        int paletteSize = section.paletteSize();
+        out.writeShort(paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            out.writeInt(section.paletteId(i));
+            out.writeByte(section.paletteFlags(i));
+        }
+        if (paletteSize == 1) return;
+
+        for (int i = 0; i < SectionSnapshot.VOLUME; i++) {
+            if (paletteSize <= 256) out.writeByte(section.paletteIndex(i));
+            else out.writeShort(section.paletteIndex(i));
+        }
+    }
+
+    private static SectionSnapshot readSection(DataInputStream in, short[] indices) throws IOException {
+        int paletteSize = in.readUnsignedShort();
+        int[] ids = new int[paletteSize];
+        byte[] flags = new byte[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            ids[i] = in.readInt();
+            flags[i] = in.readByte();
+        }
+        if (paletteSize == 1) return SectionSnapshot.uniform(ids[0], flags[0]);
+
+        for (int i = 0; i < SectionSnapshot.VOLUME; i++) {
+            indices[i] = (short) (paletteSize <= 256 ? in.readUnsignedByte() : in.readUnsignedShort());
+        }
+        return SectionSnapshot.of(ids, flags, paletteSize, indices);
+    }
+}
@@ -0,0 +1,96 @@
+package com.koolname.bigcaves.scan;
+
+/**
+ * Immutable copy of a vertical run of sections from one chunk column.
+ * <p>
+ * Optionally carries the sky ceiling of every block column: the lowest Y from which everything up to the
+ * build limit is open sky or fluid, so nothing at or above it can be part of a cave.
+ */
+public final class ChunkSnapshot {
+    private final int chunkX;
+    private final int chunkZ;
+    private final int bottomSectionY;
+    private final SectionSnapshot[] sections;
+    // Indexed z * 16 + x, null when not known
+    private final short[] ceilings;
+
+    public ChunkSnapshot(int chunkX, int chunkZ, int bottomSectionY, SectionSnapshot[] sections) {
+        this(chunkX, chunkZ, bottomSectionY, sections, null);
+    }
+
+    public ChunkSnapshot(int chunkX, int chunkZ, int bottomSectionY, SectionSnapshot[] sections, short[] ceilings) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.bottomSectionY = bottomSectionY;
+        this.sections = sections;
+        this.ceilings = ceilings;
+    }
+
+    /** Same packing as {@code ChunkPos.toLong}. */
+    public static long key(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | (chunkZ & 0xFFFFFFFFL) << 32;
+    }
+
+    public static int keyX(long key) {
+        return (int) key;
+    }
+
+    public static int keyZ(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public long key() {
+        return key(chunkX, chunkZ);
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    public int getBottomSectionY() {
+        return bottomSectionY;
+    }
+
+    public int getTopSectionY() {
+        return bottomSectionY + sections.length - 1;
+    }
+
+    /** Sky ceiling of the block column, or {@link Integer#MAX_VALUE} if it was not captured. */
+    public int getCeiling(int localX, int localZ) {
+        return ceilings == null ? Integer.MAX_VALUE : ceilings[localZ << 4 | localX];
+    }
+
+    /** Whether every section from {@code minSectionY} to {@code maxSectionY} was captured. */
+    public boolean hasSections(int minSectionY, int maxSectionY) {
+        return minSectionY >= bottomSectionY && maxSectionY <= getTopSectionY();
+    }
+
+    /**
+     * Hash of sections {@code minSectionY} to {@code maxSectionY} and of the sky ceilings, stored with scan
+     * results to tell whether they still match the chunk. A section that was not captured hashes unlike any
+     * captured one, so results are never matched against blocks nobody looked at.
+     */
+    public long contentHash(int minSectionY, int maxSectionY) {
+        long hash = 0xCBF29CE484222325L; // FNV-1a over section hashes
+        hash = (hash ^ minSectionY) * 0x100000001B3L;
+        for (int sy = minSectionY; sy <= maxSectionY; sy++) {
+            SectionSnapshot section = getSection(sy);
+            hash = (hash ^ (section == null ? -1 : section.contentHash())) * 0x100000001B3L;
+        }
+        if (ceilings != null) {
+            for (short ceiling : ceilings) hash = (hash ^ ceiling) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /** Returns the section at the given section Y, or {@code null} if it was not captured. */
+    public SectionSnapshot getSection(int sectionY) {
+        int i = sectionY - bottomSectionY;
+        if (i < 0 || i >= sections.length) return null;
+        return sections[i];
+    }
+}
@@ -0,0 +1,290 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.Arrays;
+
+/**
+ * Breadth-first flood fill over air in a {@link WorldSnapshot}, restricted to a bounded box and
+ * optionally a sphere inside it.
+ * <p>
+ * Nodes are packed longs in a primitive ring buffer and the visited set is a bitset over the box, so a
+ * fill allocates nothing per node. Only the bitset words a fill touched are cleared afterwards, and all
+ * buffers are kept for the next call. Neighbours inside the current section are read from that section
+ * directly; only steps across a section border look up another one.
+ * <p>
+ * While {@link #beginRetaining() retaining}, the visited set survives between fills so several fills
+ * never cover the same block twice, which is what {@link AirComponents} uses to label a region.
+ * <p>
+ * Not thread-safe, each scan thread owns its own instance.
+ */
+public class FloodFill {
+    /**
+     * Receives every node a fill marks as visited. When a fill stops at its node limit, the nodes still
+     * queued are reported too, without being expanded.
+     */
+    public interface NodeVisitor {
+        void visit(int x, int y, int z);
+
+        /** A node left queued when the fill stopped at its limit; while retaining it stays in the frontier. */
+        default void frontier(int x, int y, int z) {
+        }
+
+        /** The fill ran into a frontier node of an earlier fill, see {@link #reachedTruncated()}. */
+        default void reachedFrontier(int x, int y, int z) {
+        }
+    }
+
+    private int minX, minY, minZ;
+    private int sizeX, sizeY, sizeZ;
+
+    private int centerX, centerY, centerZ;
+    private long radiusSq = Long.MAX_VALUE;
+
+    private long[] visited = new long[0];
+    private int[] touched = new int[1024];
+    private int touchedCount;
+
+    // Nodes left queued by fills that hit their limit while retaining, see reachedTruncated()
+    private long[] frontier = new long[0];
+    private int[] frontierTouched = new int[64];
+    private int frontierTouchedCount;
+    private boolean reachedTruncated;
+
+    private long[] queue = new long[4096];
+    private int head, tail;
+
+    private WorldSnapshot world;
+    private NodeVisitor visitor;
+    private boolean retain;
+    private int count;
+
+    private long totalNodes;
+    private long totalNanos;
+    private int fills;
+
+    /** Restricts following fills to the given inclusive block box. */
+    public void setBounds(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = maxX - minX + 1;
+        this.sizeY = maxY - minY + 1;
+        this.sizeZ = maxZ - minZ + 1;
+
+        int words = (int) (((long) sizeX * sizeY * sizeZ + 63) >>> 6);
+        if (visited.length < words) visited = new long[words];
+        else clearVisited();
+        touchedCount = 0;
+        frontierTouchedCount = 0;
+        radiusSq = Long.MAX_VALUE;
+    }
+
+    /** Additionally restricts following fills to blocks within {@code radius} of the given center. */
+    public void setSphere(int centerX, int centerY, int centerZ, int radius) {
+        setBounds(centerX - radius, centerY - radius, centerZ - radius, centerX + radius, centerY + radius, centerZ + radius);
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.centerZ = centerZ;
+        this.radiusSq = (long) radius * radius;
+    }
+
+    /** Keeps the visited set between fills until {@link #endRetaining()}. */
+    public void beginRetaining() {
+        retain = true;
+    }
+
+    public void endRetaining() {
+        retain = false;
+        clearVisited();
+    }
+
+    /**
+     * Whether the last fill ran into blocks left unexpanded by an earlier fill that hit its limit. Such a
+     * fill only covered the rest of a component that is larger than the limit.
+     */
+    public boolean reachedTruncated() {
+        return reachedTruncated;
+    }
+
+    public boolean isVisited(int x, int y, int z) {
+        if (!inBounds(x, y, z)) return false;
+        int bit = bitIndex(x, y, z);
+        return (visited[bit >>> 6] & 1L << bit) != 0;
+    }
+
+    /**
+     * Counts air blocks connected to the start position, stopping once {@code nodeLimit} is reached.
+     */
+    public int countConnectedAir(WorldSnapshot world, int startX, int startY, int startZ, int nodeLimit) {
+        return fill(world, startX, startY, startZ, nodeLimit, null);
+    }
+
+    /**
+     * Same as {@link #countConnectedAir} but reports each counted node to the visitor. Returns 0 without
+     * filling if the start was already visited while retaining.
+     */
+    public int fill(WorldSnapshot world, int startX, int startY, int startZ, int nodeLimit, NodeVisitor visitor) {
+        long start = System.nanoTime();
+        this.world = world;
+        this.visitor = visitor;
+        count = 0;
+        head = tail = 0;
+        reachedTruncated = false;
+
+        if (inBounds(startX, startY, startZ) && !isVisited(startX, startY, startZ) && world.isAir(startX, startY, startZ)) {
+            markVisited(startX, startY, startZ);
+            enqueue(PackedPos.pack(startX, startY, startZ));
+            fill(nodeLimit);
+        }
+
+        if (!retain) clearVisited();
+        this.world = null;
+        this.visitor = null;
+
+        totalNodes += count;
+        totalNanos += System.nanoTime() - start;
+        fills++;
+        return count;
+    }
+
+    private void fill(int nodeLimit) {
+        while (head != tail) {
+            long node = queue[head];
+            head = (head + 1) & (queue.length - 1);
+
+            int x = PackedPos.x(node);
+            int y = PackedPos.y(node);
+            int z = PackedPos.z(node);
+            if (visitor != null) visitor.visit(x, y, z);
+            if (++count >= nodeLimit) {
+                drainFrontier();
+                return;
+            }
+
+            SectionSnapshot section = world.getSection(x >> 4, y >> 4, z >> 4);
+            int lx = x & 15, ly = y & 15, lz = z & 15;
+
+            visit(x - 1, y, z, lx > 0 ? section : null);
+            visit(x + 1, y, z, lx < 15 ? section : null);
+            visit(x, y - 1, z, ly > 0 ? section : null);
+            visit(x, y + 1, z, ly < 15 ? section : null);
+            visit(x, y, z - 1, lz > 0 ? section : null);
+            visit(x, y, z + 1, lz < 15 ? section : null);
+        }
+    }
+
+    private void drainFrontier() {
+        if (retain && frontier.length < visited.length) frontier = new long[visited.length];
+
+        while (head != tail) {
+            long node = queue[head];
+            head = (head + 1) & (queue.length - 1);
+            int x = PackedPos.x(node), y = PackedPos.y(node), z = PackedPos.z(node);
+            if (visitor != null) {
+                visitor.visit(x, y, z);
+                if (retain) visitor.frontier(x, y, z);
+            }
+
+            if (retain) {
+                int bit = bitIndex(x, y, z);
+                int word = bit >>> 6;
+                if (frontier[word] == 0) {
+                    if (frontierTouchedCount == frontierTouched.length) frontierTouched = Arrays.copyOf(frontierTouched, frontierTouchedCount * 2);
+                    frontierTouched[frontierTouchedCount++] = word;
+                }
+                frontier[word] |= 1L << bit;
+            }
+        }
+    }
+
+    // section is the neighbour's section when it is known to be the current one, null otherwise
+    private void visit(int x, int y, int z, SectionSnapshot section) {
+        if (!inBounds(x, y, z)) return;
+
+        int bit = bitIndex(x, y, z);
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        if ((visited[word] & mask) != 0) {
+            if (frontierTouchedCount > 0 && (frontier[word] & mask) != 0) {
+                reachedTruncated = true;
+                if (visitor != null) visitor.reachedFrontier(x, y, z);
+            }
+            return;
+        }
+
+        if (section == null) section = world.getSection(x >> 4, y >> 4, z >> 4);
+        if (section == null || !section.isAir(SectionSnapshot.index(x, y, z))) return;
+
+        if (visited[word] == 0) touch(word);
+        visited[word] |= mask;
+        enqueue(PackedPos.pack(x, y, z));
+    }
+
+    private boolean inBounds(int x, int y, int z) {
+        int dx = x - minX, dy = y - minY, dz = z - minZ;
+        if (dx < 0 || dy < 0 || dz < 0 || dx >= sizeX || dy >= sizeY || dz >= sizeZ) return false;
+        if (radiusSq == Long.MAX_VALUE) return true;
+
+        long cx = x - centerX, cy = y - centerY, cz = z - centerZ;
+        return cx * cx + cy * cy + cz * cz <= radiusSq;
+    }
+
+    private int bitIndex(int x, int y, int z) {
+        return ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX);
+    }
+
+    private void markVisited(int x, int y, int z) {
+        int bit = bitIndex(x, y, z);
+        int word = bit >>> 6;
+        if (visited[word] == 0) touch(word);
+        visited[word] |= 1L << bit;
+    }
+
+    private void touch(int word) {
+        if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+        touched[touchedCount++] = word;
+    }
+
+    private void clearVisited() {
+        for (int i = 0; i < touchedCount; i++) visited[touched[i]] = 0;
+        touchedCount = 0;
+        for (int i = 0; i < frontierTouchedCount; i++) frontier[frontierTouched[i]] = 0;
+        frontierTouchedCount = 0;
+    }
+
+    private void enqueue(long node) {
+        int next = (tail + 1) & (queue.length - 1);
+        if (next == head) {
+            growQueue();
+            next = (tail + 1) & (queue.length - 1);
+        }
+        queue[tail] = node;
+        tail = next;
+    }
+
+    private void growQueue() {
+        long[] grown = new long[queue.length * 2];
+        int size = 0;
+        for (int i = head; i != tail; i = (i + 1) & (queue.length - 1)) grown[size++] = queue[i];
+        queue = grown;
+        head = 0;
+        tail = size;
+    }
+
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public int getFills() {
+        return fills;
+    }
+
+    public double nodesPerSecond() {
+        return totalNanos == 0 ? 0 : totalNodes * 1_000_000_000.0 / totalNanos;
+    }
+
+    public void resetStats() {
+        totalNodes = 0;
+        totalNanos = 0;
+        fills = 0;
+    }
+}
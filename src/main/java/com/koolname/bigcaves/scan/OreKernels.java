@@ -0,0 +1,134 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Block checks run by the ore scans. Blocks outside the snapshot count as neither air nor ore.
+ */
+public final class OreKernels {
+    // Bits of the blocks at x = 0 and x = 15 in each of the four rows of a mask word
+    private static final long X_MIN = 0x0001_0001_0001_0001L;
+    private static final long X_MAX = 0x8000_8000_8000_8000L;
+    // Words per y layer of a section mask
+    private static final int LAYER_WORDS = 4;
+
+    private OreKernels() {
+    }
+
+    public interface OreSink {
+        /** Records the ore and returns {@code false} if it was already known. */
+        boolean add(int x, int y, int z);
+    }
+
+    public interface ExposedOreSink {
+        void accept(int x, int y, int z, int stateId);
+    }
+
+    /**
+     * Reports every exposed block of the section inside the box {@code x0..x1, y0..y1, z0..z1} whose state is
+     * in {@code targets}, found with {@link #exposedMask} instead of per-block lookups.
+     */
+    public static void forEachExposed(WorldSnapshot world, SectionSnapshot section, int sectionX, int sectionY, int sectionZ,
+                                      BitSet targets, int x0, int y0, int z0, int x1, int y1, int z1, ExposedOreSink sink) {
+        long[] exposed = exposedMask(world, sectionX, sectionY, sectionZ, section.mask(targets));
+        for (int w = 0; w < exposed.length; w++) {
+            for (long bits = exposed[w]; bits != 0; bits &= bits - 1) {
+                int index = w << 6 | Long.numberOfTrailingZeros(bits);
+                int x = sectionX << 4 | index & 15, y = sectionY << 4 | index >> 8, z = sectionZ << 4 | index >> 4 & 15;
+                if (x < x0 || x > x1 || y < y0 || y > y1 || z < z0 || z > z1) continue;
+                sink.accept(x, y, z, section.stateId(index));
+            }
+        }
+    }
+
+    /** Whether any of the six neighbours of the block is air. */
+    public static boolean isExposed(WorldSnapshot world, int x, int y, int z) {
+        return world.isAir(x + 1, y, z) || world.isAir(x - 1, y, z)
+            || world.isAir(x, y + 1, z) || world.isAir(x, y - 1, z)
+            || world.isAir(x, y, z + 1) || world.isAir(x, y, z - 1);
+    }
+
+    /**
+     * Marks the blocks of a {@link SectionSnapshot#MASK_WORDS section bitmask} that have an air neighbour.
+     * Each direction is a shift of the section's air mask, with the words that cross the section border
+     * taken from the neighbouring section's mask, so a whole section costs a few hundred word operations
+     * instead of six block lookups per block. {@code ores} is the mask of blocks to test and is not modified.
+     */
+    public static long[] exposedMask(WorldSnapshot world, int sectionX, int sectionY, int sectionZ, long[] ores) {
+        long[] air = airMask(world, sectionX, sectionY, sectionZ);
+        long[] east = airMask(world, sectionX + 1, sectionY, sectionZ), west = airMask(world, sectionX - 1, sectionY, sectionZ);
+        long[] up = airMask(world, sectionX, sectionY + 1, sectionZ), down = airMask(world, sectionX, sectionY - 1, sectionZ);
+        long[] south = airMask(world, sectionX, sectionY, sectionZ + 1), north = airMask(world, sectionX, sectionY, sectionZ - 1);
+
+        int words = SectionSnapshot.MASK_WORDS;
+        long[] exposed = new long[words];
+        for (int w = 0; w < words; w++) {
+            long ore = ores[w];
+            if (ore == 0) continue;
+
+            long a = air[w];
+            int row = w & (LAYER_WORDS - 1);
+            // Along x within each 16-bit row, the row ends come from the sections east and west
+            long xPlus = (a >>> 1) & ~X_MAX | (east[w] & X_MIN) << 15;
+            long xMinus = (a << 1) & ~X_MIN | (west[w] & X_MAX) >>> 15;
+            // Along z by whole rows, the last row of a layer continues in the next word or the next section
+            long zPlus = a >>> 16 | (row < LAYER_WORDS - 1 ? air[w + 1] : south[w - (LAYER_WORDS - 1)]) << 48;
+            long zMinus = a << 16 | (row > 0 ? air[w - 1] : north[w + (LAYER_WORDS - 1)]) >>> 48;
+            // Along y by whole layers
+            long yPlus = w < words - LAYER_WORDS ? air[w + LAYER_WORDS] : up[w - (words - LAYER_WORDS)];
+            long yMinus = w >= LAYER_WORDS ? air[w - LAYER_WORDS] : down[w + (words - LAYER_WORDS)];
+
+            exposed[w] = ore & (xPlus | xMinus | zPlus | zMinus | yPlus | yMinus);
+        }
+        return exposed;
+    }
+
+    private static long[] airMask(WorldSnapshot world, int sectionX, int sectionY, int sectionZ) {
+        SectionSnapshot section = world.getSection(sectionX, sectionY, sectionZ);
+        return section == null ? SectionSnapshot.noBlocks() : section.airMask();
+    }
+
+    /** How many of the six neighbours of the block are air. */
+    public static int exposedFaces(WorldSnapshot world, int x, int y, int z) {
+        int faces = 0;
+        if (world.isAir(x + 1, y, z)) faces++;
+        if (world.isAir(x - 1, y, z)) faces++;
+        if (world.isAir(x, y + 1, z)) faces++;
+        if (world.isAir(x, y - 1, z)) faces++;
+        if (world.isAir(x, y, z + 1)) faces++;
+        if (world.isAir(x, y, z - 1)) faces++;
+        return faces;
+    }
+
+    /**
+     * Walks the vein around a known ore through all 26 neighbours, handing every matching block to the
+     * sink. Only blocks the sink newly accepts are expanded, so several threads sharing a sink never walk
+     * the same blocks twice. Returns the number of blocks added, not counting the seed.
+     */
+    public static int findVein(WorldSnapshot world, int seedX, int seedY, int seedZ, IntPredicate sameOre, OreSink sink) {
+        long[] queue = new long[64];
+        queue[0] = PackedPos.pack(seedX, seedY, seedZ);
+        int head = 0, tail = 1;
+
+        while (head < tail) {
+            long current = queue[head++];
+            int cx = PackedPos.x(current), cy = PackedPos.y(current), cz = PackedPos.z(current);
+            for (int x = cx - 1; x <= cx + 1; x++) {
+                for (int y = cy - 1; y <= cy + 1; y++) {
+                    for (int z = cz - 1; z <= cz + 1; z++) {
+                        if (x == cx && y == cy && z == cz) continue;
+
+                        int stateId = world.getStateId(x, y, z);
+                        if (stateId < 0 || !sameOre.test(stateId) || !sink.add(x, y, z)) continue;
+
+                        if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+                        queue[tail++] = PackedPos.pack(x, y, z);
+                    }
+                }
+            }
+        }
+        return tail - 1;
+    }
+}
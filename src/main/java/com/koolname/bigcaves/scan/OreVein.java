@@ -0,0 +1,84 @@
+package com.koolname.bigcaves.scan;
+
+/**
+ * One connected group of blocks of the same ore, as found by {@link OreKernels#findVein}.
+ * <p>
+ * Members are {@link PackedPos packed} positions. Veins are immutable; a vein that loses blocks is replaced
+ * by a new instance with the same id, so readers on other threads always see a consistent vein.
+ */
+public final class OreVein {
+    private final long id;
+    private final int stateId;
+    private final long[] members;
+    private final int exposedFaces;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /** {@code stateId} is the raw block state id of one member, standing for the ore of the whole vein. */
+    public OreVein(long id, int stateId, long[] members, int exposedFaces) {
+        this.id = id;
+        this.stateId = stateId;
+        this.members = members;
+        this.exposedFaces = exposedFaces;
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (long member : members) {
+            int x = PackedPos.x(member), y = PackedPos.y(member), z = PackedPos.z(member);
+            minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+            minZ = Math.min(minZ, z); maxZ = Math.max(maxZ, z);
+        }
+        this.minX = minX; this.minY = minY; this.minZ = minZ;
+        this.maxX = maxX; this.maxY = maxY; this.maxZ = maxZ;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getStateId() {
+        return stateId;
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    public long member(int index) {
+        return members[index];
+    }
+
+    /** Faces of members that touch air. */
+    public int getExposedFaces() {
+        return exposedFaces;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    /** Whether the bounding box reaches into the chunk column. */
+    public boolean intersectsChunk(int chunkX, int chunkZ) {
+        return minX >> 4 <= chunkX && maxX >> 4 >= chunkX && minZ >> 4 <= chunkZ && maxZ >> 4 >= chunkZ;
+    }
+}
@@ -0,0 +1,26 @@
+package com.koolname.bigcaves.scan;
+
+/**
+ * Block coordinates packed into a single long, using the same layout as {@code BlockPos.asLong} so
+ * values can be handed to Minecraft code with {@code BlockPos.fromLong}.
+ */
+public final class PackedPos {
+    private PackedPos() {
+    }
+
+    public static long pack(int x, int y, int z) {
+        return (x & 0x3FFFFFFL) << 38 | (z & 0x3FFFFFFL) << 12 | (y & 0xFFFL);
+    }
+
+    public static int x(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int y(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int z(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+}
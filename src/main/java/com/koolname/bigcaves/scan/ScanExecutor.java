@@ -0,0 +1,133 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Work-stealing pool shared by all scanners.
+ * <p>
+ * Every module requests the parallelism it wants and the pool is sized to the largest active request, so
+ * enabling both modules never runs two competing pools. Workers run at minimum priority to stay out of
+ * the way of the render and server threads. The pool keeps its size while the {@link ScanThrottle} level
+ * moves; instead each {@link #forEach} runs at most as many tasks at once as the level allows, so backing
+ * off never tears down and rebuilds worker threads.
+ */
+public class ScanExecutor {
+    private static final ScanExecutor INSTANCE = new ScanExecutor();
+
+    private final Map<Object, Integer> requests = new HashMap<>();
+    private ForkJoinPool pool;
+    private int parallelism;
+
+    public static ScanExecutor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Number of workers for a module's settings: an explicit thread count, or every core except the ones
+     * reserved for the game.
+     */
+    public static int parallelism(int threads, int reservedCores) {
+        if (threads > 0) return threads;
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - reservedCores);
+    }
+
+    public synchronized void request(Object owner, int parallelism) {
+        Integer previous = requests.put(owner, parallelism);
+        if (previous == null || previous != parallelism) resize();
+    }
+
+    public synchronized void release(Object owner) {
+        if (requests.remove(owner) != null) resize();
+    }
+
+    /** Workers a {@link #forEach} may use at the current throttle level. */
+    public synchronized int getParallelism() {
+        return parallelism > 0 ? ScanThrottle.get().parallelism(parallelism) : 0;
+    }
+
+    /** The largest active request, the size of the pool and what runs at once when the throttle is fully open. */
+    public synchronized int getRequestedParallelism() {
+        return parallelism;
+    }
+
+    private void resize() {
+        int wanted = 0;
+        for (int request : requests.values()) wanted = Math.max(wanted, request);
+        if (wanted == parallelism) return;
+
+        // Tasks already running on the old pool finish there
+        if (pool != null) pool.shutdown();
+        parallelism = wanted;
+        pool = wanted > 0 ? new ForkJoinPool(wanted, ScanExecutor::newThread, null, false) : null;
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("BigCaves-ScanWorker-" + thread.getPoolIndex());
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setContextClassLoader(ScanExecutor.class.getClassLoader());
+        ScanThrottle.get().track(thread);
+        return thread;
+    }
+
+    /**
+     * Runs {@code body} for every index in {@code [0, count)} on the pool and waits for all of them. At most
+     * {@link #getParallelism} indices run at once, each task taking the next index until none is left.
+     * Interrupting the calling thread, or an index throwing, cancels the indices that have not started yet
+     * and returns once the running ones are done.
+     */
+    public void forEach(int count, IntConsumer body) throws InterruptedException {
+        ForkJoinPool pool;
+        int workers;
+        synchronized (this) {
+            pool = this.pool;
+            workers = Math.min(count, getParallelism());
+        }
+
+        if (pool == null || pool.isShutdown() || workers <= 1) {
+            for (int i = 0; i < count; i++) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                body.accept(i);
+            }
+            return;
+        }
+
+        // Indices are whole chunk columns or cave volumes, coarse enough to hand out one at a time
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Runnable worker = () -> {
+            for (int i; !cancelled.get() && (i = next.getAndIncrement()) < count; ) body.accept(i);
+        };
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers];
+        for (int w = 0; w < workers; w++) tasks[w] = pool.submit(worker);
+        try {
+            for (ForkJoinTask<?> task : tasks) task.get();
+        } catch (InterruptedException e) {
+            cancel(cancelled, tasks);
+            throw e;
+        } catch (ExecutionException e) {
+            // One index failed or hit a cancelled session, the rest would only do the same
+            cancel(cancelled, tasks);
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops handing out indices and waits for the ones already running, so no index of a failed forEach
+     * writes anything after it returned. Cancelling the tasks instead would not stop their running bodies,
+     * and joining a cancelled task does not wait for them.
+     */
+    private static void cancel(AtomicBoolean cancelled, ForkJoinTask<?>[] tasks) {
+        cancelled.set(true);
+        for (ForkJoinTask<?> task : tasks) task.quietlyJoin();
+    }
+}
@@ -0,0 +1,269 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One scan thread for all scanners.
+ * <p>
+ * Every pass asks each registered {@link Stage} for the blocks it needs, captures the union once and hands
+ * the same snapshot to every stage, so a section is copied and its air statistics built once per pass no
+ * matter how many modules are on. Stages run in ascending order, so a stage sees what the ones before it
+ * found in the same pass. The thread starts with the first stage and ends with the last one, so there is
+ * never more than one. Passes wait while the {@link ScanThrottle} reports a stall.
+ * <p>
+ * Passes belong to a {@link ScanSession}, one per world. Changing worlds ends the session, which stops the
+ * running pass at its next checkpoint and keeps its results out.
+ */
+public class ScanPipeline {
+    private static final Logger LOGGER = Logger.getLogger(ScanPipeline.class.getName());
+    private static final ScanPipeline INSTANCE = new ScanPipeline();
+    // Lets bursts of updates (chunk delta packets, explosions) arrive as one batch
+    private static final long BATCH_MILLIS = 50;
+
+    public interface Stage {
+        /**
+         * Called on the pipeline thread at the start of every pass. Returns the blocks the stage needs, or
+         * {@code null} to sit the pass out.
+         */
+        Region prepare() throws InterruptedException;
+
+        /** Runs the stage's part of the pass on a snapshot covering at least the region it asked for. */
+        void scan(WorldSnapshot world) throws InterruptedException;
+
+        /** Time until the stage wants another pass even if nothing signals the pipeline. */
+        long delayMillis();
+
+        /** Called on the pipeline thread after the stage was unregistered, once it no longer runs. */
+        default void stopped() {
+        }
+
+        /**
+         * Called on the thread that changed worlds, once the ended session can no longer publish. Drops what
+         * the stage shows for the old world; the rest of its state is reset by the next {@link #prepare}.
+         */
+        default void sessionEnded() {
+        }
+    }
+
+    /** Box of blocks, both corners inclusive. */
+    public static final class Region {
+        private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+        public Region(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+
+        public Region union(Region other) {
+            return new Region(Math.min(minX, other.minX), Math.min(minY, other.minY), Math.min(minZ, other.minZ),
+                Math.max(maxX, other.maxX), Math.max(maxY, other.maxY), Math.max(maxZ, other.maxZ));
+        }
+    }
+
+    private static final class Entry {
+        final Stage stage;
+        final int order;
+
+        Entry(Stage stage, int order) {
+            this.stage = stage;
+            this.order = order;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Stage> removed = new ArrayList<>();
+    private final ScanSignal wakeup = new ScanSignal();
+    private volatile BlockSource source;
+    // The stage the pipeline thread is in, guarded by this
+    private Stage current;
+    private volatile ScanSession session = new ScanSession(null);
+    private Thread thread;
+
+    public static ScanPipeline get() {
+        return INSTANCE;
+    }
+
+    /** Where passes capture their blocks from. Set once at startup. */
+    public void setSource(BlockSource source) {
+        this.source = source;
+    }
+
+    /** Adds the stage; stages with a lower {@code order} run first in every pass. */
+    public synchronized void register(Stage stage, int order) {
+        int i = 0;
+        while (i < entries.size() && entries.get(i).order <= order) i++;
+        entries.add(i, new Entry(stage, order));
+        removed.remove(stage);
+
+        if (thread == null) {
+            thread = new Thread(this::run, "BigCaves-ScanPipeline");
+            thread.setDaemon(true);
+            ScanThrottle.get().track(thread);
+            thread.start();
+        }
+        wakeup.signal();
+    }
+
+    /** Removes the stage, interrupting it if it is running. {@link Stage#stopped} follows on the pipeline thread. */
+    public synchronized void unregister(Stage stage) {
+        if (!entries.removeIf(entry -> entry.stage == stage)) return;
+        removed.add(stage);
+        if (current == stage && thread != null) thread.interrupt();
+        wakeup.signal();
+    }
+
+    /** The session passes run in now. Stages read it in {@link Stage#prepare} and keep it for the pass. */
+    public ScanSession session() {
+        return session;
+    }
+
+    /**
+     * Ends the current session and starts one for {@code world}, unless it is already the current world.
+     * Called on the client thread when the world changes.
+     */
+    public void beginSession(Object world) {
+        List<Stage> stages = new ArrayList<>();
+        synchronized (this) {
+            if (session.getWorld() == world) return;
+            ScanSession ended = session;
+            session = new ScanSession(world);
+            ended.cancel();
+            for (Entry entry : entries) stages.add(entry.stage);
+        }
+        for (Stage stage : stages) stage.sessionEnded();
+        wakeup.signal();
+    }
+
+    /** Starts the next pass now rather than after the stages' delay. */
+    public void signal() {
+        wakeup.signal();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                List<Stage> stages = new ArrayList<>();
+                List<Stage> stopped;
+                synchronized (this) {
+                    stopped = new ArrayList<>(removed);
+                    removed.clear();
+                    for (Entry entry : entries) stages.add(entry.stage);
+                    if (stages.isEmpty()) thread = null;
+                }
+                for (Stage stage : stopped) stop(stage);
+                if (stages.isEmpty()) return;
+
+                try {
+                    runPass(stages);
+                } catch (InterruptedException e) {
+                    // A stage was removed mid-pass, the others carry on next pass
+                    continue;
+                } catch (CancellationException e) {
+                    // The world changed mid-pass, the next pass starts over in the new session
+                    continue;
+                } catch (RuntimeException e) {
+                    // E.g. the capture hit a world that was just unloaded; the next pass tries again
+                    LOGGER.log(Level.SEVERE, "Unexpected error in scan pass", e);
+                }
+
+                try {
+                    long delay = Long.MAX_VALUE;
+                    for (Stage stage : stages) delay = Math.min(delay, stage.delayMillis());
+                    wakeup.await(Math.max(BATCH_MILLIS, delay));
+                    Thread.sleep(BATCH_MILLIS);
+                } catch (InterruptedException e) {
+                    // A stage was removed between passes
+                }
+            }
+        } finally {
+            // However the loop ended, the next register() starts a new thread
+            synchronized (this) {
+                if (thread == Thread.currentThread()) thread = null;
+            }
+        }
+    }
+
+    private void stop(Stage stage) {
+        try {
+            stage.stopped();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Unexpected error stopping scan stage " + stage, e);
+        }
+    }
+
+    private void runPass(List<Stage> stages) throws InterruptedException {
+        ScanThrottle.get().pace();
+        Region region = null;
+        boolean[] scanning = new boolean[stages.size()];
+        for (int i = 0; i < stages.size(); i++) {
+            Region needed = prepare(stages.get(i));
+            if (needed == null) continue;
+            scanning[i] = true;
+            region = region == null ? needed : region.union(needed);
+        }
+        if (region == null) return;
+
+        WorldSnapshot world = source.capture(region.minX >> 4, region.minZ >> 4, region.maxX >> 4, region.maxZ >> 4, region.minY, region.maxY);
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            // A stage removed since the pass started must not scan into the state its module just cleared
+            if (!scanning[i] || !enter(stage)) continue;
+            try {
+                stage.scan(world);
+            } catch (InterruptedException e) {
+                if (isRegistered(stage)) throw e;
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Unexpected error in scan stage " + stage, e);
+            } finally {
+                leave(stage);
+            }
+        }
+    }
+
+    private Region prepare(Stage stage) throws InterruptedException {
+        if (!enter(stage)) return null;
+        try {
+            return stage.prepare();
+        } catch (InterruptedException e) {
+            if (isRegistered(stage)) throw e;
+            return null;
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Unexpected error preparing scan stage " + stage, e);
+            return null;
+        } finally {
+            leave(stage);
+        }
+    }
+
+    // Makes the stage the one unregister() interrupts, unless it was removed already
+    private synchronized boolean enter(Stage stage) {
+        if (!isRegistered(stage)) return false;
+        current = stage;
+        return true;
+    }
+
+    // An interrupt for a stage removed just as it returned is dropped here, not left for the next stage
+    private synchronized void leave(Stage stage) {
+        current = null;
+        if (!isRegistered(stage)) Thread.interrupted();
+    }
+
+    private synchronized boolean isRegistered(Stage stage) {
+        for (Entry entry : entries) {
+            if (entry.stage == stage) return true;
+        }
+        return false;
+    }
+}
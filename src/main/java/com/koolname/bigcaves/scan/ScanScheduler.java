@@ -0,0 +1,101 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Orders the work units of a pass around the viewer and runs them in slices sized to a time budget, so
+ * results can be published after every slice and the ones that matter most show up first.
+ * <p>
+ * A unit's priority is its distance to the eye; units outside the view cone count as
+ * {@value #OFF_VIEW_FACTOR} times as far. Slice sizes follow the measured cost per unit and carry over
+ * between passes. Between slices the {@link ScanThrottle} may hold the thread back. Each scanner keeps its
+ * own instance; an instance is used by one thread.
+ */
+public class ScanScheduler {
+    private static final double OFF_VIEW_FACTOR = 3;
+
+    public interface SliceTask {
+        /** Runs the units at positions {@code from} (inclusive) to {@code to} (exclusive) of the order. */
+        void run(int from, int to) throws InterruptedException;
+    }
+
+    private final long budgetNanos;
+    private final ScanThrottle throttle = ScanThrottle.get();
+    private int sliceSize = 16;
+
+    private double eyeX, eyeY, eyeZ;
+    private double lookX, lookY, lookZ = 1;
+    private double halfView = Math.PI;
+
+    public ScanScheduler(long budgetMillis) {
+        this.budgetNanos = budgetMillis * 1_000_000;
+    }
+
+    /**
+     * Sets the eye and view cone used by {@link #priority}. The cone covers the corners of the screen:
+     * its half angle comes from the vertical field of view widened by the aspect ratio.
+     */
+    public void setViewer(double eyeX, double eyeY, double eyeZ, float yaw, float pitch, double fovDegrees, double aspect) {
+        this.eyeX = eyeX;
+        this.eyeY = eyeY;
+        this.eyeZ = eyeZ;
+
+        // Same convention as Entity.getRotationVector
+        double yawRad = Math.toRadians(yaw);
+        double pitchRad = Math.toRadians(pitch);
+        lookX = -Math.sin(yawRad) * Math.cos(pitchRad);
+        lookY = -Math.sin(pitchRad);
+        lookZ = Math.cos(yawRad) * Math.cos(pitchRad);
+
+        double tanHalf = Math.tan(Math.toRadians(fovDegrees) / 2);
+        halfView = Math.atan(tanHalf * Math.sqrt(1 + aspect * aspect));
+    }
+
+    /** Lower runs sooner. The unit is a sphere, so large units near the edge of the screen still count as in view. */
+    public double priority(double x, double y, double z, double radius) {
+        double dx = x - eyeX, dy = y - eyeY, dz = z - eyeZ;
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance <= radius) return 0;
+
+        double angle = Math.acos(Math.max(-1, Math.min(1, (dx * lookX + dy * lookY + dz * lookZ) / distance)));
+        boolean inView = angle - Math.asin(radius / distance) <= halfView;
+        return inView ? distance : distance * OFF_VIEW_FACTOR;
+    }
+
+    /** Indices {@code 0..count-1} sorted by priority, most urgent first. */
+    public int[] order(int count, IntToDoubleFunction priority) {
+        // Priority in the high half of each key, index in the low half; non-negative floats sort by their bits
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            float value = (float) Math.max(0, priority.applyAsDouble(i));
+            keys[i] = (long) Float.floatToIntBits(value) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = (int) keys[i];
+        return order;
+    }
+
+    /** Runs {@code count} units in order, one slice at a time. */
+    public void run(int count, SliceTask task) throws InterruptedException {
+        for (int from = 0; from < count; ) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            throttle.pace();
+
+            int to = Math.min(count, from + sliceSize);
+            long start = System.nanoTime();
+            task.run(from, to);
+            long elapsed = Math.max(1, System.nanoTime() - start);
+
+            // Aim the next slice at the budget, moving at most a factor of two per slice
+            long fit = budgetNanos * (to - from) / elapsed;
+            sliceSize = (int) Math.max(Math.max(1, sliceSize / 2), Math.min(Math.min(fit, sliceSize * 2L), 1 << 16));
+            from = to;
+
+            long idle = throttle.idleNanos(elapsed, ScanExecutor.get().getRequestedParallelism());
+            if (idle > 0 && from < count) Thread.sleep(idle / 1_000_000, (int) (idle % 1_000_000));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Scanning of one world. The {@link ScanPipeline} starts a new session whenever the client's world changes,
+ * on a server switch or a dimension change, and ends the old one.
+ * <p>
+ * Scan code calls {@link #checkpoint} in its loops, so work for a world that is gone stops within one unit
+ * instead of running to the end of the pass. Results go in through {@link #publish}; once {@link #cancel}
+ * returns, nothing of the ended session can land anymore, so clearing results right after is final.
+ */
+public final class ScanSession {
+    private static final AtomicLong EPOCHS = new AtomicLong();
+
+    private final long epoch = EPOCHS.incrementAndGet();
+    private final Object world;
+    // Publishers share the read lock, ending the session takes the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean cancelled;
+
+    ScanSession(Object world) {
+        this.world = world;
+    }
+
+    /** Increases with every session. */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /** The world this session scans, compared by identity; {@code null} while in no world. */
+    public Object getWorld() {
+        return world;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Throws a {@link CancellationException} once the session has ended. Cheap enough for every unit of work. */
+    public void checkpoint() {
+        if (cancelled) throw new CancellationException("Scan session " + epoch + " ended");
+    }
+
+    /**
+     * Runs {@code publish} unless the session has ended and returns whether it ran. Publishes of one session
+     * run concurrently with each other; ending the session waits for the ones already running.
+     */
+    public boolean publish(Runnable publish) {
+        lock.readLock().lock();
+        try {
+            if (cancelled) return false;
+            publish.run();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void cancel() {
+        lock.writeLock().lock();
+        try {
+            cancelled = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
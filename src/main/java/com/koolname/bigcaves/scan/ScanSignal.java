@@ -0,0 +1,32 @@
+package com.koolname.bigcaves.scan;
+
+/**
+ * Lets event handlers wake a sleeping scan thread early. Signals raised while the scanner is busy are
+ * remembered, so a change is never missed between two passes.
+ */
+public class ScanSignal {
+    private boolean signalled;
+
+    public synchronized void signal() {
+        signalled = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until signalled or until the timeout elapses.
+     *
+     * @return {@code true} if the wait ended because of a signal
+     */
+    public synchronized boolean await(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (!signalled && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+
+        boolean woken = signalled;
+        signalled = false;
+        return woken;
+    }
+}
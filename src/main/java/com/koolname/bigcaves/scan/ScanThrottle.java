@@ -0,0 +1,203 @@
+package com.koolname.bigcaves.scan;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the scanners to the frame time and CPU share the modules ask for.
+ * <p>
+ * The game feeds in its frame times and, in singleplayer, the integrated server's tick time; the scan
+ * threads feed in their own CPU time. From these the throttle keeps one level between
+ * {@value #MIN_LEVEL} and 1: it backs off by a factor whenever a target is missed and creeps back up while
+ * there is room. Scanners turn the level into worker count, flood fill budget, pass delay and idle time
+ * between slices. A frame or server tick far over its target counts as a stall: the level drops to the
+ * minimum and scanning pauses for {@value #STALL_PAUSE_MILLIS} ms.
+ * <p>
+ * Modules set their targets per owner, like {@link ScanExecutor#request}, and the strictest one wins.
+ * Without any targets the level stays at 1.
+ */
+public class ScanThrottle {
+    private static final ScanThrottle INSTANCE = new ScanThrottle();
+
+    public static final double MIN_LEVEL = 0.05;
+    private static final long UPDATE_NANOS = 250_000_000L;
+    private static final double BACK_OFF = 0.7;
+    private static final double RECOVER = 0.05;
+    // Smoothing of the frame time average, about the last 30 frames
+    private static final double FRAME_ALPHA = 1 / 30.0;
+    private static final double STALL_FACTOR = 4;
+    // Server ticks are 50 ms; over this the integrated server is falling behind badly
+    private static final double STALL_MSPT = 100;
+    private static final long STALL_PAUSE_MILLIS = 1000;
+
+    private final Map<Object, double[]> targets = new HashMap<>();
+    private volatile double frameTarget = Double.POSITIVE_INFINITY;
+    private volatile double cpuTarget = Double.POSITIVE_INFINITY;
+
+    // Written by the render and client threads
+    private volatile double frameMillis;
+    private volatile double worstFrameMillis;
+    private volatile double serverMspt;
+
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> threadCpu = new HashMap<>();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private volatile double level = 1;
+    private volatile double cpuShare;
+    private volatile long pausedUntil;
+    private long lastUpdate = System.nanoTime();
+
+    public static ScanThrottle get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets an owner's targets: the average frame time in milliseconds and the share of all cores the scan
+     * threads may use, from 0 to 1. Pass {@code 0} for a target the owner does not care about.
+     */
+    public synchronized void setTargets(Object owner, double frameMillis, double cpuShare) {
+        targets.put(owner, new double[] {frameMillis, cpuShare});
+        retarget();
+    }
+
+    public synchronized void release(Object owner) {
+        if (targets.remove(owner) != null) retarget();
+    }
+
+    private void retarget() {
+        double frame = Double.POSITIVE_INFINITY, cpu = Double.POSITIVE_INFINITY;
+        for (double[] target : targets.values()) {
+            if (target[0] > 0) frame = Math.min(frame, target[0]);
+            if (target[1] > 0) cpu = Math.min(cpu, target[1]);
+        }
+        frameTarget = frame;
+        cpuTarget = cpu;
+        if (targets.isEmpty()) level = 1;
+    }
+
+    /** Called by the render thread once per frame with the time since the previous frame. */
+    public void recordFrame(long nanos) {
+        double millis = nanos / 1e6;
+        frameMillis = frameMillis == 0 ? millis : frameMillis + (millis - frameMillis) * FRAME_ALPHA;
+        if (millis > worstFrameMillis) worstFrameMillis = millis;
+    }
+
+    /** Called by the client thread with the integrated server's average tick time. */
+    public void recordServerTick(double mspt) {
+        serverMspt = mspt;
+    }
+
+    /** Called when the game leaves a world; the server tick time no longer applies. */
+    public void clearServerTick() {
+        serverMspt = 0;
+    }
+
+    /** Counts the thread's CPU time as scan work until it dies. */
+    public void track(Thread thread) {
+        threads.add(thread);
+    }
+
+    /**
+     * Re-evaluates the level if the last update is long enough ago. Called by the scan threads between
+     * slices and passes; cheap otherwise.
+     */
+    public void update() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            long elapsed = now - lastUpdate;
+            if (elapsed < UPDATE_NANOS) return;
+            lastUpdate = now;
+
+            cpuShare = sampleCpu() / (double) elapsed / Runtime.getRuntime().availableProcessors();
+            double worstFrame = worstFrameMillis;
+            worstFrameMillis = 0;
+            double mspt = serverMspt;
+
+            if (targets.isEmpty()) return;
+
+            boolean stalled = worstFrame > frameTarget * STALL_FACTOR || mspt > STALL_MSPT;
+            if (stalled) {
+                level = MIN_LEVEL;
+                pausedUntil = System.currentTimeMillis() + STALL_PAUSE_MILLIS;
+            } else if (frameMillis > frameTarget || cpuShare > cpuTarget || mspt > 50) {
+                level = Math.max(MIN_LEVEL, level * BACK_OFF);
+            } else {
+                level = Math.min(1, level + RECOVER);
+            }
+        }
+    }
+
+    // CPU time the tracked threads used since the last sample
+    private long sampleCpu() {
+        if (!threadBean.isThreadCpuTimeSupported()) return 0;
+
+        long total = 0;
+        Map<Long, Long> seen = new HashMap<>();
+        threads.removeIf(thread -> !thread.isAlive());
+        for (Thread thread : threads) {
+            long cpu = threadBean.getThreadCpuTime(thread.threadId());
+            if (cpu < 0) continue;
+            Long previous = threadCpu.get(thread.threadId());
+            // A thread seen for the first time started recently, all of its time counts
+            total += cpu - (previous == null ? 0 : previous);
+            seen.put(thread.threadId(), cpu);
+        }
+        threadCpu.clear();
+        threadCpu.putAll(seen);
+        return total;
+    }
+
+    /**
+     * Waits out a stall, then updates the level. Called by the scan threads before each slice; throws if
+     * the thread is interrupted while waiting.
+     */
+    public void pace() throws InterruptedException {
+        long wait = pausedUntil - System.currentTimeMillis();
+        if (wait > 0) Thread.sleep(wait);
+        update();
+    }
+
+    /** Between {@link #MIN_LEVEL} and 1, the share of the most work the scanners may do. */
+    public double getLevel() {
+        return level;
+    }
+
+    /** Scan threads' share of all cores over the last update interval. */
+    public double getCpuShare() {
+        return cpuShare;
+    }
+
+    /** Average frame time in milliseconds, 0 before the first frame. */
+    public double getFrameMillis() {
+        return frameMillis;
+    }
+
+    /** Workers to use out of at most {@code max}. */
+    public int parallelism(int max) {
+        return Math.max(1, (int) Math.round(max * level));
+    }
+
+    /**
+     * Idle time after a slice that took {@code sliceNanos} on {@code workers} threads. Below one worker's
+     * worth of level the slices are spaced out so the scanners use that fraction of a single core.
+     */
+    public long idleNanos(long sliceNanos, int workers) {
+        double threadsWorth = level * Math.max(1, workers);
+        return threadsWorth >= 1 ? 0 : (long) (sliceNanos * (1 / threadsWorth - 1));
+    }
+
+    /** Flood fill node budget out of at most {@code max}, never below {@code min}. */
+    public int nodeBudget(int max, int min) {
+        return Math.max(min, (int) (max * level));
+    }
+
+    /** Time between passes for a base delay; longer while the level is low. */
+    public long delayMillis(long baseMillis) {
+        return (long) (baseMillis / level);
+    }
+}
@@ -0,0 +1,261 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable copy of one 16x16x16 chunk section.
+ * <p>
+ * Blocks are stored as indices into a small local palette of global block state ids, one byte per block
+ * (or a short when the section holds more than 256 distinct states). Every palette entry carries
+ * classification flags, so hot loops can answer "is this air" without resolving the block state.
+ * Instances are never mutated after construction and can be shared between scan threads.
+ */
+public final class SectionSnapshot {
+    public static final int VOLUME = 16 * 16 * 16;
+    /**
+     * Length of a section bitmask: block {@link #index(int, int, int) index} {@code i} is bit {@code i & 63} of
+     * word {@code i >> 6}, so a word holds four rows of 16 blocks along x.
+     */
+    public static final int MASK_WORDS = VOLUME / 64;
+
+    public static final byte FLAG_AIR = 1;
+    /** No collision shape, sight rays pass through (air, plants, fluids). */
+    public static final byte FLAG_PASSABLE = 2;
+    /** Lets sky light straight down without dimming it (air, glass). */
+    public static final byte FLAG_SKYLIGHT = 4;
+
+    private static final long[] NO_BLOCKS = new long[MASK_WORDS];
+    private static final long[] ALL_BLOCKS = new long[MASK_WORDS];
+
+    static {
+        Arrays.fill(ALL_BLOCKS, -1L);
+    }
+
+    /** Shared all-air section. Raw state id 0 is {@code minecraft:air}. */
+    public static final SectionSnapshot EMPTY = uniform(0, (byte) (FLAG_AIR | FLAG_PASSABLE | FLAG_SKYLIGHT));
+
+    private final int[] paletteIds;
+    private final byte[] paletteFlags;
+    private final byte[] narrow;
+    private final short[] wide;
+    private final int airCount;
+    // Summed-area table of air, built on first use by mixed sections; see airCount(int, int, int, int, int, int)
+    private volatile short[] airPrefix;
+    // Bitmask of air, built on first use; see airMask()
+    private volatile long[] airMask;
+    // Hash of the blocks, 0 until first use; see contentHash()
+    private volatile long contentHash;
+
+    private SectionSnapshot(int[] paletteIds, byte[] paletteFlags, byte[] narrow, short[] wide, int airCount) {
+        this.paletteIds = paletteIds;
+        this.paletteFlags = paletteFlags;
+        this.narrow = narrow;
+        this.wide = wide;
+        this.airCount = airCount;
+    }
+
+    public static SectionSnapshot uniform(int stateId, byte flags) {
+        int air = (flags & FLAG_AIR) != 0 ? VOLUME : 0;
+        return new SectionSnapshot(new int[] { stateId }, new byte[] { flags }, null, null, air);
+    }
+
+    /**
+     * Builds a snapshot from palette indices in {@link #index(int, int, int)} order. The arrays are copied,
+     * so callers may reuse their buffers.
+     */
+    public static SectionSnapshot of(int[] paletteIds, byte[] paletteFlags, int paletteSize, short[] indices) {
+        if (paletteSize == 1) return uniform(paletteIds[0], paletteFlags[0]);
+
+        int[] ids = Arrays.copyOf(paletteIds, paletteSize);
+        byte[] flags = Arrays.copyOf(paletteFlags, paletteSize);
+
+        int air = 0;
+        for (int i = 0; i < VOLUME; i++) {
+            if ((flags[indices[i]] & FLAG_AIR) != 0) air++;
+        }
+
+        if (paletteSize <= 256) {
+            byte[] narrow = new byte[VOLUME];
+            for (int i = 0; i < VOLUME; i++) narrow[i] = (byte) indices[i];
+            return new SectionSnapshot(ids, flags, narrow, null, air);
+        }
+        return new SectionSnapshot(ids, flags, null, Arrays.copyOf(indices, VOLUME), air);
+    }
+
+    /** Same packing as {@code ChunkSectionPos.asLong}. */
+    public static long key(int sectionX, int sectionY, int sectionZ) {
+        return (sectionX & 0x3FFFFFL) << 42 | (sectionY & 0xFFFFFL) | (sectionZ & 0x3FFFFFL) << 20;
+    }
+
+    public static int keyX(long key) {
+        return (int) (key >> 42);
+    }
+
+    public static int keyY(long key) {
+        return (int) (key << 44 >> 44);
+    }
+
+    public static int keyZ(long key) {
+        return (int) (key << 22 >> 42);
+    }
+
+    /** Index of a block inside a section; coordinates are masked to the section. */
+    public static int index(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    public int paletteIndex(int index) {
+        if (narrow != null) return narrow[index] & 0xFF;
+        if (wide != null) return wide[index] & 0xFFFF;
+        return 0;
+    }
+
+    public int stateId(int index) {
+        return paletteIds[paletteIndex(index)];
+    }
+
+    public byte flags(int index) {
+        return paletteFlags[paletteIndex(index)];
+    }
+
+    public boolean isAir(int index) {
+        return (flags(index) & FLAG_AIR) != 0;
+    }
+
+    public boolean isPassable(int index) {
+        return (flags(index) & FLAG_PASSABLE) != 0;
+    }
+
+    public int airCount() {
+        return airCount;
+    }
+
+    public boolean isAllAir() {
+        return airCount == VOLUME;
+    }
+
+    /**
+     * Air blocks in the box between two section-local corners, both inclusive, in constant time. Sections
+     * that are only partly air build a 17x17x17 table of prefix sums (about 10 KB) on first use and keep it;
+     * a changed section is a new snapshot, so the table never goes stale.
+     */
+    public int airCount(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (airCount == 0) return 0;
+        if (airCount == VOLUME) return (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+
+        short[] prefix = airPrefix;
+        if (prefix == null) airPrefix = prefix = buildAirPrefix();
+
+        int x1 = maxX + 1, y1 = maxY + 1, z1 = maxZ + 1;
+        return prefix[prefixIndex(x1, y1, z1)]
+            - prefix[prefixIndex(minX, y1, z1)] - prefix[prefixIndex(x1, minY, z1)] - prefix[prefixIndex(x1, y1, minZ)]
+            + prefix[prefixIndex(minX, minY, z1)] + prefix[prefixIndex(minX, y1, minZ)] + prefix[prefixIndex(x1, minY, minZ)]
+            - prefix[prefixIndex(minX, minY, minZ)];
+    }
+
+    private static int prefixIndex(int x, int y, int z) {
+        return (y * 17 + z) * 17 + x;
+    }
+
+    // Entry (x, y, z) holds the air count of the box from the section's low corner up to, excluding, (x, y, z);
+    // the zero planes at 0 keep lookups free of bounds checks. Racing builders produce equal tables.
+    private short[] buildAirPrefix() {
+        short[] prefix = new short[17 * 17 * 17];
+        for (int y = 1; y <= 16; y++) {
+            for (int z = 1; z <= 16; z++) {
+                for (int x = 1; x <= 16; x++) {
+                    int air = isAir(index(x - 1, y - 1, z - 1)) ? 1 : 0;
+                    prefix[prefixIndex(x, y, z)] = (short) (air
+                        + prefix[prefixIndex(x - 1, y, z)] + prefix[prefixIndex(x, y - 1, z)] + prefix[prefixIndex(x, y, z - 1)]
+                        - prefix[prefixIndex(x - 1, y - 1, z)] - prefix[prefixIndex(x - 1, y, z - 1)] - prefix[prefixIndex(x, y - 1, z - 1)]
+                        + prefix[prefixIndex(x - 1, y - 1, z - 1)]);
+                }
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * FNV-1a hash of the raw state id of every block in index order, stable across sessions as long as raw
+     * ids are. Computed on first use and kept; racing callers compute the same value.
+     */
+    public long contentHash() {
+        long hash = contentHash;
+        if (hash != 0) return hash;
+
+        hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < VOLUME; i++) hash = (hash ^ stateId(i)) * 0x100000001B3L;
+        contentHash = hash;
+        return hash;
+    }
+
+    /** Empty bitmask standing in for sections that were not captured. Callers must not modify it. */
+    public static long[] noBlocks() {
+        return NO_BLOCKS;
+    }
+
+    /**
+     * Air blocks as a {@link #MASK_WORDS section bitmask}, built on first use and kept like the prefix sums.
+     * The array is shared, callers must not modify it.
+     */
+    public long[] airMask() {
+        if (airCount == 0) return NO_BLOCKS;
+        if (airCount == VOLUME) return ALL_BLOCKS;
+
+        long[] mask = airMask;
+        if (mask == null) {
+            boolean[] matches = new boolean[paletteFlags.length];
+            for (int i = 0; i < matches.length; i++) matches[i] = (paletteFlags[i] & FLAG_AIR) != 0;
+            airMask = mask = buildMask(matches);
+        }
+        return mask;
+    }
+
+    /** Blocks that are one of the given raw state ids, as a new {@link #MASK_WORDS section bitmask}. */
+    public long[] mask(BitSet stateIds) {
+        boolean[] matches = new boolean[paletteIds.length];
+        boolean any = false, all = true;
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = stateIds.get(paletteIds[i]);
+            any |= matches[i];
+            all &= matches[i];
+        }
+        if (!any) return new long[MASK_WORDS];
+        if (all) return ALL_BLOCKS.clone();
+        return buildMask(matches);
+    }
+
+    // Sections with a single palette entry never get here, both callers answer them as all or nothing
+    private long[] buildMask(boolean[] matches) {
+        long[] mask = new long[MASK_WORDS];
+        for (int i = 0; i < VOLUME; i++) {
+            if (matches[paletteIndex(i)]) mask[i >> 6] |= 1L << i;
+        }
+        return mask;
+    }
+
+    /** Whether any block is one of the given raw state ids, answered from the palette alone. */
+    public boolean containsAny(BitSet stateIds) {
+        for (int id : paletteIds) {
+            if (stateIds.get(id)) return true;
+        }
+        return false;
+    }
+
+    public boolean isUniform() {
+        return paletteIds.length == 1;
+    }
+
+    public int paletteSize() {
+        return paletteIds.length;
+    }
+
+    public int paletteId(int paletteIndex) {
+        return paletteIds[paletteIndex];
+    }
+
+    public byte paletteFlags(int paletteIndex) {
+        return paletteFlags[paletteIndex];
+    }
+}
@@ -0,0 +1,102 @@
+package com.koolname.bigcaves.scan;
+
+import com.koolname.bigcaves.events.BlockChangedEvent;
+import com.koolname.bigcaves.events.ChunkLoadedEvent;
+import com.koolname.bigcaves.events.ChunkUnloadedEvent;
+import meteordevelopment.meteorclient.events.game.GameLeftEvent;
+import meteordevelopment.orbit.EventHandler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * Section snapshots shared by every scanner, kept until the section changes, along with the sky ceilings
+ * of each chunk column, kept until any of its sections changes.
+ * <p>
+ * Entries are dropped by block and chunk events, so a section is only copied again after the server
+ * actually changed it. A generation counter guards against a scan thread caching a copy it took while
+ * the client thread was changing the same section.
+ */
+public class SnapshotCache {
+    private static final SnapshotCache INSTANCE = new SnapshotCache();
+
+    private final Map<Long, SectionSnapshot> sections = new ConcurrentHashMap<>();
+    private final Map<Long, short[]> ceilings = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    public static SnapshotCache get() {
+        return INSTANCE;
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    public SectionSnapshot get(int sectionX, int sectionY, int sectionZ) {
+        return sections.get(SectionSnapshot.key(sectionX, sectionY, sectionZ));
+    }
+
+    /** Stores a copy unless something was invalidated since {@code capturedAt} was read. */
+    public void put(int sectionX, int sectionY, int sectionZ, SectionSnapshot snapshot, long capturedAt) {
+        if (generation.get() != capturedAt) return;
+        sections.put(SectionSnapshot.key(sectionX, sectionY, sectionZ), snapshot);
+    }
+
+    public short[] getCeilings(int chunkX, int chunkZ) {
+        return ceilings.get(ChunkSnapshot.key(chunkX, chunkZ));
+    }
+
+    /** Stores the ceilings unless something was invalidated since {@code capturedAt} was read. */
+    public void putCeilings(int chunkX, int chunkZ, short[] chunkCeilings, long capturedAt) {
+        if (generation.get() != capturedAt) return;
+        ceilings.put(ChunkSnapshot.key(chunkX, chunkZ), chunkCeilings);
+    }
+
+    public int size() {
+        return sections.size();
+    }
+
+    public void invalidateSection(int sectionX, int sectionY, int sectionZ) {
+        generation.incrementAndGet();
+        sections.remove(SectionSnapshot.key(sectionX, sectionY, sectionZ));
+        ceilings.remove(ChunkSnapshot.key(sectionX, sectionZ));
+    }
+
+    public void invalidateChunk(int chunkX, int chunkZ) {
+        if (mc.world == null) return;
+        generation.incrementAndGet();
+        ceilings.remove(ChunkSnapshot.key(chunkX, chunkZ));
+        for (int sy = mc.world.getBottomY() >> 4; sy <= mc.world.getTopYInclusive() >> 4; sy++) {
+            sections.remove(SectionSnapshot.key(chunkX, sy, chunkZ));
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        sections.clear();
+        ceilings.clear();
+    }
+
+    @EventHandler
+    private void onBlockChanged(BlockChangedEvent event) {
+        invalidateSection(event.x >> 4, event.y >> 4, event.z >> 4);
+    }
+
+    @EventHandler
+    private void onChunkLoaded(ChunkLoadedEvent event) {
+        invalidateChunk(event.chunkX, event.chunkZ);
+    }
+
+    @EventHandler
+    private void onChunkUnloaded(ChunkUnloadedEvent event) {
+        invalidateChunk(event.chunkX, event.chunkZ);
+    }
+
+    @EventHandler
+    private void onGameLeft(GameLeftEvent event) {
+        clear();
+    }
+}
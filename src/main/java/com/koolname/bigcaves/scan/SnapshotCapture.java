@@ -0,0 +1,185 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.EmptyBlockView;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.EmptyChunk;
+import net.minecraft.world.chunk.PalettedContainer;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * Copies loaded chunk sections into {@link SectionSnapshot}s, reusing copies from the {@link SnapshotCache}
+ * for sections that did not change.
+ * <p>
+ * Captures run on scan threads while the client thread keeps changing the world, so nothing is read from a
+ * live section block by block: its palette and data array are copied in one go and read from the copy.
+ * Sky ceilings come from those copies too, never from the light engine.
+ * <p>
+ * Each instance keeps scratch buffers and must only be used from one thread at a time; region captures
+ * spread chunk columns over the {@link ScanExecutor} with one instance per worker.
+ */
+public class SnapshotCapture {
+    private static final ThreadLocal<SnapshotCapture> WORKERS = ThreadLocal.withInitial(SnapshotCapture::new);
+
+    /** Captures from the world the client is in at the time of each call; nothing while it is in none. */
+    public static final BlockSource CLIENT = (minChunkX, minChunkZ, maxChunkX, maxChunkZ, minY, maxY) -> {
+        ClientWorld world = mc.world;
+        if (world == null) return new WorldSnapshot(new Long2ObjectOpenHashMap<>());
+        return capture(world, minChunkX, minChunkZ, maxChunkX, maxChunkZ, minY, maxY);
+    };
+
+    private final short[] indices = new short[SectionSnapshot.VOLUME];
+    private int[] paletteIds = new int[16];
+    private byte[] paletteFlags = new byte[16];
+    private final Map<BlockState, Integer> paletteLookup = new IdentityHashMap<>();
+
+    /**
+     * Captures every loaded chunk in the given chunk range, keeping only the sections that overlap
+     * {@code minY..maxY}. Columns are captured in parallel, each with the capturing thread's own instance.
+     */
+    public static WorldSnapshot capture(ClientWorld world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int minY, int maxY) throws InterruptedException {
+        int width = maxChunkX - minChunkX + 1;
+        int count = width * (maxChunkZ - minChunkZ + 1);
+        ChunkSnapshot[] captured = new ChunkSnapshot[count];
+
+        ScanExecutor.get().forEach(count, i -> {
+            int cx = minChunkX + i % width;
+            int cz = minChunkZ + i / width;
+            Chunk chunk = world.getChunk(cx, cz);
+            if (chunk instanceof EmptyChunk) return;
+
+            captured[i] = WORKERS.get().captureChunk(chunk, cx, cz, minY, maxY);
+        });
+
+        Long2ObjectOpenHashMap<ChunkSnapshot> chunks = new Long2ObjectOpenHashMap<>(count);
+        for (ChunkSnapshot snapshot : captured) {
+            if (snapshot != null) chunks.put(snapshot.key(), snapshot);
+        }
+        return new WorldSnapshot(chunks);
+    }
+
+    public ChunkSnapshot captureChunk(Chunk chunk, int chunkX, int chunkZ, int minY, int maxY) {
+        ChunkSection[] sectionArray = chunk.getSectionArray();
+        int bottom = Math.max(minY >> 4, chunk.getBottomSectionCoord());
+        int top = Math.min(maxY >> 4, chunk.getBottomSectionCoord() + sectionArray.length - 1);
+        if (top < bottom) return null;
+
+        SectionSnapshot[] sections = new SectionSnapshot[top - bottom + 1];
+        for (int sy = bottom; sy <= top; sy++) sections[sy - bottom] = section(chunk, chunkX, sy, chunkZ);
+
+        SnapshotCache cache = SnapshotCache.get();
+        short[] ceilings = cache.getCeilings(chunkX, chunkZ);
+        if (ceilings == null) {
+            long generation = cache.generation();
+            ceilings = captureCeilings(chunk, chunkX, chunkZ);
+            cache.putCeilings(chunkX, chunkZ, ceilings, generation);
+        }
+        return new ChunkSnapshot(chunkX, chunkZ, bottom, sections, ceilings);
+    }
+
+    // The cached copy of the section, or a new one
+    private SectionSnapshot section(Chunk chunk, int chunkX, int sectionY, int chunkZ) {
+        SnapshotCache cache = SnapshotCache.get();
+        SectionSnapshot section = cache.get(chunkX, sectionY, chunkZ);
+        if (section == null) {
+            long generation = cache.generation();
+            section = captureSection(chunk.getSectionArray()[sectionY - chunk.getBottomSectionCoord()]);
+            cache.put(chunkX, sectionY, chunkZ, section, generation);
+        }
+        return section;
+    }
+
+    /**
+     * Sky ceiling of every block column. Walks down from the build limit through blocks that are passable or
+     * let sky light straight down, such as glass, the blocks under which the sky light stays full. Passable
+     * blocks other than air count too, so open water is surface as well. All-air sections are skipped whole,
+     * so this usually reads one or two sections per column.
+     */
+    private short[] captureCeilings(Chunk chunk, int chunkX, int chunkZ) {
+        short[] ceilings = new short[256];
+        int bottom = chunk.getBottomSectionCoord();
+        Arrays.fill(ceilings, (short) (bottom << 4));
+
+        boolean[] closed = new boolean[256];
+        int open = 256;
+        for (int sy = bottom + chunk.getSectionArray().length - 1; sy >= bottom && open > 0; sy--) {
+            SectionSnapshot section = section(chunk, chunkX, sy, chunkZ);
+            if (section.isAllAir()) continue;
+
+            for (int column = 0; column < 256; column++) {
+                if (closed[column]) continue;
+                for (int y = 15; y >= 0; y--) {
+                    byte flags = section.flags(y << 8 | column);
+                    if ((flags & (SectionSnapshot.FLAG_PASSABLE | SectionSnapshot.FLAG_SKYLIGHT)) != 0) continue;
+                    ceilings[column] = (short) ((sy << 4 | y) + 1);
+                    closed[column] = true;
+                    open--;
+                    break;
+                }
+            }
+        }
+        return ceilings;
+    }
+
+    public SectionSnapshot captureSection(ChunkSection section) {
+        if (section == null || section.isEmpty()) return SectionSnapshot.EMPTY;
+
+        // One copy of the palette and data array; reading the live section block by block could see it
+        // half way through a change
+        PalettedContainer<BlockState> states = section.getBlockStateContainer().copy();
+        paletteLookup.clear();
+        int paletteSize = 0;
+        BlockState lastState = null;
+        int lastIndex = 0;
+
+        // Same y/z/x order as SectionSnapshot.index
+        int i = 0;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    BlockState state = states.get(x, y, z);
+                    if (state != lastState) {
+                        Integer known = paletteLookup.get(state);
+                        if (known == null) {
+                            known = paletteSize;
+                            addPaletteEntry(paletteSize++, state);
+                            paletteLookup.put(state, known);
+                        }
+                        lastState = state;
+                        lastIndex = known;
+                    }
+                    indices[i++] = (short) lastIndex;
+                }
+            }
+        }
+
+        return SectionSnapshot.of(paletteIds, paletteFlags, paletteSize, indices);
+    }
+
+    private void addPaletteEntry(int index, BlockState state) {
+        if (index == paletteIds.length) {
+            paletteIds = Arrays.copyOf(paletteIds, index * 2);
+            paletteFlags = Arrays.copyOf(paletteFlags, index * 2);
+        }
+        paletteIds[index] = Block.getRawIdFromState(state);
+        paletteFlags[index] = classify(state);
+    }
+
+    public static byte classify(BlockState state) {
+        if (state.isAir()) return SectionSnapshot.FLAG_AIR | SectionSnapshot.FLAG_PASSABLE | SectionSnapshot.FLAG_SKYLIGHT;
+        byte flags = state.getCollisionShape(EmptyBlockView.INSTANCE, BlockPos.ORIGIN).isEmpty() ? SectionSnapshot.FLAG_PASSABLE : 0;
+        // Blocks shaped like slabs dim light by their shape even at zero opacity
+        if (state.getOpacity() == 0 && !state.hasSidedTransparency()) flags |= SectionSnapshot.FLAG_SKYLIGHT;
+        return flags;
+    }
+}
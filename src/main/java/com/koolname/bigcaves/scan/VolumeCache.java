@@ -0,0 +1,195 @@
+package com.koolname.bigcaves.scan;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size set of {@link PackedPos packed} volume origins with the time each was last evaluated.
+ * <p>
+ * Entries count as fresh for a fixed time to live. When a segment fills up, a clock hand drops the first
+ * entry it passes that has expired or was not looked up since the hand last went by, so memory stays at
+ * what the constructor allocated. Open addressing over primitive arrays keeps lookups free of
+ * allocation; the table is split into independently locked segments so scan workers rarely wait on
+ * each other.
+ */
+public class VolumeCache {
+    private static final int SEGMENT_BITS = 4;
+    // Segments are filled to at most 3/4 so probe runs stay short
+    private static final int LOAD_NUMERATOR = 3, LOAD_DENOMINATOR = 4;
+
+    private static final class Segment {
+        final long[] keys;
+        // Time of the last evaluation, 0 for an empty slot
+        final long[] stamps;
+        final boolean[] referenced;
+        final int maxSize;
+        int size;
+        int hand;
+        long hits, misses;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            stamps = new long[capacity];
+            referenced = new boolean[capacity];
+            maxSize = capacity * LOAD_NUMERATOR / LOAD_DENOMINATOR;
+        }
+    }
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+    private final long ttlMillis;
+
+    /** {@code capacity} is rounded up to a power of two; at most 3/4 of it is filled. */
+    public VolumeCache(int capacity, long ttlMillis) {
+        int perSegment = Integer.highestOneBit(Math.max(16, (capacity >> SEGMENT_BITS) - 1) << 1);
+        for (int i = 0; i < segments.length; i++) segments[i] = new Segment(perSegment);
+        this.ttlMillis = ttlMillis;
+    }
+
+    public boolean isFresh(int x, int y, int z, long now) {
+        return isFresh(PackedPos.pack(x, y, z), now);
+    }
+
+    /** Whether the volume was evaluated less than the time to live ago. Counts as a hit or a miss. */
+    public boolean isFresh(long key, long now) {
+        long hash = mix(key);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            int slot = find(segment, key, hash);
+            if (slot >= 0 && now - segment.stamps[slot] < ttlMillis) {
+                segment.referenced[slot] = true;
+                segment.hits++;
+                return true;
+            }
+            if (slot >= 0) removeAt(segment, slot);
+            segment.misses++;
+            return false;
+        }
+    }
+
+    public void put(int x, int y, int z, long now) {
+        put(PackedPos.pack(x, y, z), now);
+    }
+
+    /** Records the volume as evaluated at {@code now}, evicting another entry if the segment is full. */
+    public void put(long key, long now) {
+        long hash = mix(key);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            int slot = find(segment, key, hash);
+            if (slot < 0) {
+                if (segment.size >= segment.maxSize) evict(segment, now);
+                int mask = segment.keys.length - 1;
+                for (slot = (int) hash & mask; segment.stamps[slot] != 0; slot = (slot + 1) & mask) ;
+                segment.keys[slot] = key;
+                segment.size++;
+            }
+            segment.stamps[slot] = Math.max(1, now);
+            segment.referenced[slot] = true;
+        }
+    }
+
+    public void invalidate(int x, int y, int z) {
+        invalidate(PackedPos.pack(x, y, z));
+    }
+
+    public void invalidate(long key) {
+        long hash = mix(key);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            int slot = find(segment, key, hash);
+            if (slot >= 0) removeAt(segment, slot);
+        }
+    }
+
+    /** Drops every entry; hit and miss counts are kept. */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Arrays.fill(segment.stamps, 0);
+                Arrays.fill(segment.referenced, false);
+                segment.size = 0;
+                segment.hand = 0;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static int find(Segment segment, long key, long hash) {
+        int mask = segment.keys.length - 1;
+        for (int slot = (int) hash & mask; segment.stamps[slot] != 0; slot = (slot + 1) & mask) {
+            if (segment.keys[slot] == key) return slot;
+        }
+        return -1;
+    }
+
+    // Second-chance clock: expired entries go first, recently looked up ones get another round
+    private void evict(Segment segment, long now) {
+        int mask = segment.keys.length - 1;
+        while (true) {
+            int slot = segment.hand;
+            segment.hand = (slot + 1) & mask;
+            if (segment.stamps[slot] == 0) continue;
+
+            if (now - segment.stamps[slot] >= ttlMillis || !segment.referenced[slot]) {
+                removeAt(segment, slot);
+                return;
+            }
+            segment.referenced[slot] = false;
+        }
+    }
+
+    // Backward shift deletion: pulls later entries of the probe run into the hole so lookups need no tombstones
+    private static void removeAt(Segment segment, int slot) {
+        int mask = segment.keys.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; segment.stamps[i] != 0; i = (i + 1) & mask) {
+            int home = (int) mix(segment.keys[i]) & mask;
+            if (((i - home) & mask) < ((i - hole) & mask)) continue;
+
+            segment.keys[hole] = segment.keys[i];
+            segment.stamps[hole] = segment.stamps[i];
+            segment.referenced[hole] = segment.referenced[i];
+            hole = i;
+        }
+        segment.stamps[hole] = 0;
+        segment.referenced[hole] = false;
+        segment.size--;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
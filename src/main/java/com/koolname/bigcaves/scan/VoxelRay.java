@@ -0,0 +1,59 @@
+package com.koolname.bigcaves.scan;
+
+/**
+ * Line-of-sight tests against a {@link WorldSnapshot}, walking every block a ray passes through in order
+ * (Amanatides-Woo voxel traversal). Matches a collider raycast at block granularity: any block with a
+ * collision shape stops the ray, partial shapes count as full blocks.
+ */
+public final class VoxelRay {
+    private VoxelRay() {
+    }
+
+    /**
+     * Whether the segment from the eye to the center of the target block reaches the target without
+     * passing through a block that {@link WorldSnapshot#blocksRay stops rays}.
+     */
+    public static boolean canSee(WorldSnapshot world, double eyeX, double eyeY, double eyeZ, int targetX, int targetY, int targetZ) {
+        double dx = targetX + 0.5 - eyeX;
+        double dy = targetY + 0.5 - eyeY;
+        double dz = targetZ + 0.5 - eyeZ;
+
+        int x = (int) Math.floor(eyeX);
+        int y = (int) Math.floor(eyeY);
+        int z = (int) Math.floor(eyeZ);
+
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+
+        // Ray parameter (0 at the eye, 1 at the target) of the next boundary crossed on each axis
+        double tMaxX = boundary(eyeX, x, dx), tMaxY = boundary(eyeY, y, dy), tMaxZ = boundary(eyeZ, z, dz);
+        double tDeltaX = dx != 0 ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+        double tDeltaZ = dz != 0 ? Math.abs(1 / dz) : Double.POSITIVE_INFINITY;
+
+        int steps = Math.abs(targetX - x) + Math.abs(targetY - y) + Math.abs(targetZ - z);
+        for (int i = 0; i <= steps; i++) {
+            if (x == targetX && y == targetY && z == targetZ) return true;
+            if (world.blocksRay(x, y, z)) return false;
+
+            if (tMaxX <= tMaxY && tMaxX <= tMaxZ) {
+                x += stepX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY <= tMaxZ) {
+                y += stepY;
+                tMaxY += tDeltaY;
+            } else {
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+            }
+        }
+        return x == targetX && y == targetY && z == targetZ;
+    }
+
+    private static double boundary(double start, int block, double delta) {
+        if (delta > 0) return (block + 1 - start) / delta;
+        if (delta < 0) return (start - block) / -delta;
+        return Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,83 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Collection;
+
+/**
+ * Immutable, thread-safe view over a set of captured chunk columns.
+ * <p>
+ * Everything the scanners read goes through here, so a scan pass sees one consistent copy of the world
+ * and is unaffected by the client thread mutating or unloading chunks while it runs. Blocks outside the
+ * captured area read as not loaded and never as air.
+ */
+public final class WorldSnapshot {
+    private final Long2ObjectOpenHashMap<ChunkSnapshot> chunks;
+
+    public WorldSnapshot(Long2ObjectOpenHashMap<ChunkSnapshot> chunks) {
+        this.chunks = chunks;
+    }
+
+    public ChunkSnapshot getChunk(int chunkX, int chunkZ) {
+        return chunks.get(ChunkSnapshot.key(chunkX, chunkZ));
+    }
+
+    public boolean isChunkLoaded(int chunkX, int chunkZ) {
+        return chunks.containsKey(ChunkSnapshot.key(chunkX, chunkZ));
+    }
+
+    public Collection<ChunkSnapshot> getChunks() {
+        return chunks.values();
+    }
+
+    public int chunkCount() {
+        return chunks.size();
+    }
+
+    /** Whether the block is below the sky ceiling of its column; blocks in columns without a ceiling always are. */
+    public boolean isBelowCeiling(int x, int y, int z) {
+        ChunkSnapshot chunk = chunks.get(ChunkSnapshot.key(x >> 4, z >> 4));
+        return chunk != null && y < chunk.getCeiling(x & 15, z & 15);
+    }
+
+    /** Whether height {@code y} is below the sky ceiling of every column in the inclusive box. */
+    public boolean isBelowCeiling(int minX, int minZ, int maxX, int maxZ, int y) {
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                ChunkSnapshot chunk = chunks.get(ChunkSnapshot.key(chunkX, chunkZ));
+                if (chunk == null) return false;
+                int fromX = Math.max(minX, chunkX << 4) & 15, toX = Math.min(maxX, chunkX << 4 | 15) & 15;
+                int fromZ = Math.max(minZ, chunkZ << 4) & 15, toZ = Math.min(maxZ, chunkZ << 4 | 15) & 15;
+                for (int z = fromZ; z <= toZ; z++) {
+                    for (int x = fromX; x <= toX; x++) {
+                        if (y >= chunk.getCeiling(x, z)) return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Returns the section at the given section coordinates, or {@code null} if it was not captured. */
+    public SectionSnapshot getSection(int sectionX, int sectionY, int sectionZ) {
+        ChunkSnapshot chunk = chunks.get(ChunkSnapshot.key(sectionX, sectionZ));
+        return chunk == null ? null : chunk.getSection(sectionY);
+    }
+
+    public boolean isAir(int x, int y, int z) {
+        SectionSnapshot section = getSection(x >> 4, y >> 4, z >> 4);
+        return section != null && section.isAir(SectionSnapshot.index(x, y, z));
+    }
+
+    /** Whether the block stops a sight ray. Blocks that were not captured never do. */
+    public boolean blocksRay(int x, int y, int z) {
+        SectionSnapshot section = getSection(x >> 4, y >> 4, z >> 4);
+        return section != null && !section.isPassable(SectionSnapshot.index(x, y, z));
+    }
+
+    /** Returns the raw block state id at the given position, or {@code -1} if it was not captured. */
+    public int getStateId(int x, int y, int z) {
+        SectionSnapshot section = getSection(x >> 4, y >> 4, z >> 4);
+        return section == null ? -1 : section.stateId(SectionSnapshot.index(x, y, z));
+    }
+}
@@ -0,0 +1,68 @@
+package com.koolname.bigcaves.scan;
+
+import com.koolname.bigcaves.events.ChunkLoadedEvent;
+import com.koolname.bigcaves.events.ChunkUnloadedEvent;
+import meteordevelopment.meteorclient.events.game.GameLeftEvent;
+import meteordevelopment.meteorclient.events.world.TickEvent;
+import meteordevelopment.orbit.EventHandler;
+import net.minecraft.client.world.ClientWorld;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * Starts a new {@link ScanSession} whenever the client's world changes. The client builds a new world
+ * object on every server join, respawn into another dimension and dimension change, so comparing the
+ * instance catches all of them. Subscribed once at startup.
+ * <p>
+ * Also keeps the set of chunks the client has loaded, so scan threads can ask without touching the chunk
+ * manager.
+ */
+public class WorldTracker {
+    private static final WorldTracker INSTANCE = new WorldTracker();
+
+    private ClientWorld world;
+    private final Set<Long> loadedChunks = ConcurrentHashMap.newKeySet();
+
+    public static WorldTracker get() {
+        return INSTANCE;
+    }
+
+    // Until the next tick the old session runs on; stages and renderers compare its world with the client's
+    @EventHandler
+    private void onTick(TickEvent.Pre event) {
+        if (mc.world != world) changeWorld(mc.world);
+    }
+
+    @EventHandler
+    private void onGameLeft(GameLeftEvent event) {
+        changeWorld(null);
+    }
+
+    @EventHandler
+    private void onChunkLoaded(ChunkLoadedEvent event) {
+        // The first chunks of a new world arrive before its first tick
+        if (mc.world != world) changeWorld(mc.world);
+        loadedChunks.add(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+    }
+
+    @EventHandler
+    private void onChunkUnloaded(ChunkUnloadedEvent event) {
+        loadedChunks.remove(ChunkSnapshot.key(event.chunkX, event.chunkZ));
+    }
+
+    /** Whether the client has the chunk loaded in the current world. Safe to call from any thread. */
+    public boolean isChunkLoaded(int chunkX, int chunkZ) {
+        return loadedChunks.contains(ChunkSnapshot.key(chunkX, chunkZ));
+    }
+
+    private void changeWorld(ClientWorld next) {
+        world = next;
+        loadedChunks.clear();
+        // Sections are cached by position, the new world's would collide with the old one's
+        SnapshotCache.get().clear();
+        ScanPipeline.get().beginSession(next);
+    }
+}
@@ -0,0 +1,46 @@
+package com.koolname.bigcaves.stats;
+
+import com.koolname.bigcaves.scan.ScanThrottle;
+import meteordevelopment.meteorclient.events.game.GameLeftEvent;
+import meteordevelopment.meteorclient.events.render.Render3DEvent;
+import meteordevelopment.meteorclient.events.world.TickEvent;
+import meteordevelopment.orbit.EventHandler;
+import net.minecraft.server.integrated.IntegratedServer;
+
+import static meteordevelopment.meteorclient.MeteorClient.mc;
+
+/**
+ * Feeds the game's frame times and, in singleplayer, the integrated server's tick time into the
+ * {@link ScanThrottle}. Subscribed once at startup.
+ */
+public class GameLoad {
+    private static final GameLoad INSTANCE = new GameLoad();
+
+    private final ScanThrottle throttle = ScanThrottle.get();
+    private long lastFrame;
+
+    public static GameLoad get() {
+        return INSTANCE;
+    }
+
+    @EventHandler
+    private void onRender(Render3DEvent event) {
+        long now = System.nanoTime();
+        if (lastFrame != 0) throttle.recordFrame(now - lastFrame);
+        lastFrame = now;
+    }
+
+    @EventHandler
+    private void onTick(TickEvent.Post event) {
+        IntegratedServer server = mc.getServer();
+        if (server != null && mc.isIntegratedServerRunning()) throttle.recordServerTick(server.getAverageNanosPerTick() / 1e6);
+        else throttle.clearServerTick();
+    }
+
+    // The loading screens until the next world are not slow frames
+    @EventHandler
+    private void onGameLeft(GameLeftEvent event) {
+        lastFrame = 0;
+        throttle.clearServerTick();
+    }
+}
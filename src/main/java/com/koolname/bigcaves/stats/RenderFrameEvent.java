@@ -0,0 +1,37 @@
+package com.koolname.bigcaves.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** What one module drew in one frame. Off by default, it fires every frame. */
+@Name("bigcaves.RenderFrame")
+@Label("Render Frame")
+@Category({ "Big Caves", "Render" })
+@Description("Quads and lines one module drew in a frame")
+@Enabled(false)
+@StackTrace(false)
+public class RenderFrameEvent extends jdk.jfr.Event {
+    private static final EventType TYPE = EventType.getEventType(RenderFrameEvent.class);
+
+    @Label("Module")
+    public String module;
+
+    @Label("Quads")
+    public int quads;
+
+    @Label("Lines")
+    public int lines;
+
+    @Label("Mesh Rebuilt")
+    public boolean rebuilt;
+
+    /** Whether a recording takes the event; frames only create one then, so rendering allocates nothing otherwise. */
+    public static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,44 @@
+package com.koolname.bigcaves.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One pass of a scanner, committed by {@link ScanStats.Scanner#endPass}. */
+@Name("bigcaves.ScanPass")
+@Label("Scan Pass")
+@Category({ "Big Caves", "Scan" })
+@Description("One pass of the cave or ore scanner")
+@StackTrace(false)
+public class ScanPassEvent extends jdk.jfr.Event {
+    @Label("Scanner")
+    public String scanner;
+
+    @Label("Work Units")
+    @Description("Volumes, chunk columns or cave areas handled by the pass")
+    public int units;
+
+    @Label("Blocks Read")
+    public long blocksRead;
+
+    @Label("Sections Skipped")
+    @Description("Sections passed over because their palette has nothing to look for")
+    public long sectionsSkipped;
+
+    @Label("Cache Hits")
+    public long cacheHits;
+
+    @Label("Cache Misses")
+    public long cacheMisses;
+
+    @Label("Flood Candidates")
+    public long candidates;
+
+    @Label("Flood Nodes")
+    public long floodNodes;
+
+    @Label("Queue Depth")
+    public int queueDepth;
+}
@@ -0,0 +1,115 @@
+package com.koolname.bigcaves.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the scanners, visibility worker and renderers, shown by the scan stats HUD and mirrored
+ * into JDK Flight Recorder events. Counters only ever grow; readers compute rates from the difference
+ * between two reads. Safe to update from any thread.
+ */
+public final class ScanStats {
+    private static final ScanStats INSTANCE = new ScanStats();
+
+    /** One scanner. Pass counters are filled while a pass runs and committed as a {@link ScanPassEvent}. */
+    public static final class Scanner {
+        private final String name;
+
+        public final LongAdder passes = new LongAdder();
+        /** Blocks covered by the pass: checked volumes, flooded nodes, scanned sections. */
+        public final LongAdder blocksRead = new LongAdder();
+        public final LongAdder sectionsSkipped = new LongAdder();
+        public final LongAdder cacheHits = new LongAdder();
+        public final LongAdder cacheMisses = new LongAdder();
+        public final LongAdder candidates = new LongAdder();
+        public final LongAdder floodNodes = new LongAdder();
+
+        private volatile long lastPassNanos;
+        private volatile int queueDepth;
+
+        private ScanPassEvent event;
+        private long passStart;
+        private long blocksAtStart, skippedAtStart, hitsAtStart, missesAtStart, candidatesAtStart, nodesAtStart;
+
+        private Scanner(String name) {
+            this.name = name;
+        }
+
+        /** Marks the start of a pass; only the scanner's own thread calls this and {@link #endPass}. */
+        public void beginPass() {
+            passStart = System.nanoTime();
+            blocksAtStart = blocksRead.sum();
+            skippedAtStart = sectionsSkipped.sum();
+            hitsAtStart = cacheHits.sum();
+            missesAtStart = cacheMisses.sum();
+            candidatesAtStart = candidates.sum();
+            nodesAtStart = floodNodes.sum();
+
+            event = new ScanPassEvent();
+            event.begin();
+        }
+
+        public void endPass(int units) {
+            lastPassNanos = System.nanoTime() - passStart;
+            passes.increment();
+
+            ScanPassEvent pass = event;
+            event = null;
+            if (pass == null) return;
+            pass.end();
+            if (pass.shouldCommit()) {
+                pass.scanner = name;
+                pass.units = units;
+                pass.blocksRead = blocksRead.sum() - blocksAtStart;
+                pass.sectionsSkipped = sectionsSkipped.sum() - skippedAtStart;
+                pass.cacheHits = cacheHits.sum() - hitsAtStart;
+                pass.cacheMisses = cacheMisses.sum() - missesAtStart;
+                pass.candidates = candidates.sum() - candidatesAtStart;
+                pass.floodNodes = floodNodes.sum() - nodesAtStart;
+                pass.queueDepth = queueDepth;
+                pass.commit();
+            }
+        }
+
+        public long getLastPassNanos() {
+            return lastPassNanos;
+        }
+
+        /** Work waiting for the scanner, e.g. dirty volumes or sections. */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public void setQueueDepth(int queueDepth) {
+            this.queueDepth = queueDepth;
+        }
+    }
+
+    public final Scanner caves = new Scanner("caves");
+    public final Scanner ores = new Scanner("ores");
+
+    public final LongAdder raycasts = new LongAdder();
+    // Drawn in the last frame, per renderer
+    private volatile int caveQuads, caveLines, oreQuads, oreLines;
+
+    public static ScanStats get() {
+        return INSTANCE;
+    }
+
+    public void setCaveRender(int quads, int lines) {
+        caveQuads = quads;
+        caveLines = lines;
+    }
+
+    public void setOreRender(int quads, int lines) {
+        oreQuads = quads;
+        oreLines = lines;
+    }
+
+    public int getQuadsPerFrame() {
+        return caveQuads + oreQuads;
+    }
+
+    public int getLinesPerFrame() {
+        return caveLines + oreLines;
+    }
+}
@@ -0,0 +1,24 @@
+package com.koolname.bigcaves.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One round of the ore visibility worker. */
+@Name("bigcaves.VisibilityRound")
+@Label("Visibility Round")
+@Category({ "Big Caves", "Render" })
+@Description("Line of sight checks of one visibility round")
+@StackTrace(false)
+public class VisibilityRoundEvent extends jdk.jfr.Event {
+    @Label("Veins")
+    public int veins;
+
+    @Label("Ores")
+    public int ores;
+
+    @Label("Raycasts")
+    public int raycasts;
+}
@@ -0,0 +1,121 @@
+package com.koolname.bigcaves.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory-mapped file holding the records of a 32x32 chunk region.
+ * <p>
+ * Layout: magic, version, then an offset and length per chunk (0 length for none), then the records.
+ * A record is rewritten in place when it fits, otherwise appended at the end with its old bytes left
+ * behind; files that are mostly dead space are compacted when opened.
+ */
+final class RegionFile implements Closeable {
+    private static final int MAGIC = 0x42434353; // "BCCS"
+    private static final int VERSION = 1;
+    private static final int TABLE = 8;
+    private static final int HEADER = TABLE + 32 * 32 * 8;
+    private static final int GROWTH = 64 * 1024;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+
+    RegionFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+
+        if (size > Integer.MAX_VALUE) size = 0;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, HEADER + GROWTH));
+        if (size < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            reset();
+            return;
+        }
+
+        int live = 0;
+        end = HEADER;
+        for (int slot = 0; slot < 32 * 32; slot++) {
+            int offset = buffer.getInt(TABLE + slot * 8), length = buffer.getInt(TABLE + slot * 8 + 4);
+            if (!isValid(offset, length)) continue;
+            live += length;
+            end = Math.max(end, offset + length);
+        }
+        if (end - HEADER > 2 * live + GROWTH) compact();
+    }
+
+    /** Returns a copy of the chunk's record, or {@code null} if there is none. */
+    synchronized ByteBuffer read(int chunkX, int chunkZ) {
+        int slot = slot(chunkX, chunkZ);
+        int offset = buffer.getInt(slot), length = buffer.getInt(slot + 4);
+        if (!isValid(offset, length)) return null;
+
+        byte[] record = new byte[length];
+        buffer.get(offset, record);
+        return ByteBuffer.wrap(record);
+    }
+
+    synchronized void write(int chunkX, int chunkZ, ByteBuffer record) throws IOException {
+        int slot = slot(chunkX, chunkZ);
+        int length = record.remaining();
+        int offset = buffer.getInt(slot), previous = buffer.getInt(slot + 4);
+
+        if (!isValid(offset, previous) || length > previous) {
+            offset = end;
+            ensureCapacity(offset + length);
+            end = offset + length;
+        }
+        buffer.put(offset, record, record.position(), length);
+        buffer.putInt(slot, offset);
+        buffer.putInt(slot + 4, length);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private static int slot(int chunkX, int chunkZ) {
+        return TABLE + ((chunkZ & 31) * 32 + (chunkX & 31)) * 8;
+    }
+
+    private boolean isValid(int offset, int length) {
+        return length > 0 && offset >= HEADER && (long) offset + length <= buffer.capacity();
+    }
+
+    // Empties the table; the file keeps its size (mapped files cannot be truncated everywhere) and is reused
+    private void reset() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        for (int i = TABLE; i < HEADER; i += 4) buffer.putInt(i, 0);
+        end = HEADER;
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        if (size <= buffer.capacity()) return;
+        int capacity = (size + GROWTH - 1) / GROWTH * GROWTH;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    // Rewrites the live records back to back from the start of the data area
+    private void compact() throws IOException {
+        ByteBuffer[] records = new ByteBuffer[32 * 32];
+        for (int slot = 0; slot < 32 * 32; slot++) {
+            int offset = buffer.getInt(TABLE + slot * 8), length = buffer.getInt(TABLE + slot * 8 + 4);
+            if (!isValid(offset, length)) continue;
+            byte[] record = new byte[length];
+            buffer.get(offset, record);
+            records[slot] = ByteBuffer.wrap(record);
+        }
+
+        reset();
+        for (int slot = 0; slot < 32 * 32; slot++) {
+            if (records[slot] != null) write(slot % 32, slot / 32, records[slot]);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.koolname.bigcaves.store;
+
+import meteordevelopment.meteorclient.MeteorClient;
+import net.minecraft.client.MinecraftClient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scan results kept on disk between sessions, one directory per server (or singleplayer world) and
+ * dimension, split into {@link RegionFile}s of 32x32 chunks.
+ * <p>
+ * Records are opaque to the store. Each module encodes its own and starts them with the chunk's content
+ * hash, so results are only reused for chunks that did not change while nobody was looking. I/O errors are
+ * logged and treated as a missing record.
+ */
+public class ScanStore {
+    private static final Logger LOGGER = Logger.getLogger(ScanStore.class.getName());
+    private static final int MAX_OPEN_REGIONS = 16;
+
+    private final Path directory;
+    private final String kind;
+    private final Map<Long, RegionFile> regions = new LinkedHashMap<>(MAX_OPEN_REGIONS, 0.75f, true);
+
+    private ScanStore(Path directory, String kind) {
+        this.directory = directory;
+        this.kind = kind;
+    }
+
+    /**
+     * Directory for the world the client is in, or {@code null} when not in one.
+     */
+    public static Path locate(MinecraftClient mc) {
+        if (mc.world == null) return null;
+
+        String server;
+        if (mc.getServer() != null) server = "singleplayer-" + mc.getServer().getSaveProperties().getLevelName();
+        else if (mc.getCurrentServerEntry() != null) server = mc.getCurrentServerEntry().address;
+        else return null;
+
+        String dimension = mc.world.getRegistryKey().getValue().toString();
+        return MeteorClient.FOLDER.toPath().resolve("big-caves").resolve(sanitize(server)).resolve(sanitize(dimension));
+    }
+
+    /** Opens the store of the given kind ({@code "caves"}, {@code "ores"}) in a directory from {@link #locate}. */
+    public static ScanStore open(Path directory, String kind) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot create scan cache directory " + directory, e);
+            return null;
+        }
+        return new ScanStore(directory, kind);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /** Returns the chunk's record, or {@code null} if there is none. */
+    public synchronized ByteBuffer read(int chunkX, int chunkZ) {
+        RegionFile region = region(chunkX, chunkZ);
+        return region == null ? null : region.read(chunkX, chunkZ);
+    }
+
+    public synchronized void write(int chunkX, int chunkZ, ByteBuffer record) {
+        RegionFile region = region(chunkX, chunkZ);
+        if (region == null) return;
+        try {
+            region.write(chunkX, chunkZ, record);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot write scan cache for chunk " + chunkX + ", " + chunkZ, e);
+        }
+    }
+
+    public synchronized void close() {
+        for (RegionFile region : regions.values()) closeQuietly(region);
+        regions.clear();
+    }
+
+    private RegionFile region(int chunkX, int chunkZ) {
+        int regionX = chunkX >> 5, regionZ = chunkZ >> 5;
+        long key = (regionX & 0xFFFFFFFFL) | (regionZ & 0xFFFFFFFFL) << 32;
+
+        RegionFile region = regions.get(key);
+        if (region != null) return region;
+
+        try {
+            region = new RegionFile(directory.resolve("r." + regionX + "." + regionZ + "." + kind));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot open scan cache region " + regionX + ", " + regionZ, e);
+            return null;
+        }
+
+        // Keep only the most recently used regions mapped
+        if (regions.size() >= MAX_OPEN_REGIONS) {
+            Map.Entry<Long, RegionFile> eldest = regions.entrySet().iterator().next();
+            regions.remove(eldest.getKey());
+            closeQuietly(eldest.getValue());
+        }
+        regions.put(key, region);
+        return region;
+    }
+
+    private static void closeQuietly(RegionFile region) {
+        try {
+            region.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot close scan cache region", e);
+        }
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
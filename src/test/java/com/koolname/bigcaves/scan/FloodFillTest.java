@@ -0,0 +1,159 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FloodFillTest {
+    private static final int[] IDS = {0, 1};
+    private static final byte[] FLAGS = {TestWorlds.AIR, 0};
+
+    private interface Shape {
+        boolean isAir(int x, int y, int z);
+    }
+
+    private static WorldSnapshot world(int size, int height, Shape shape) {
+        return TestWorlds.world(size, height,
+            (cx, sy, cz) -> TestWorlds.section(IDS, FLAGS, cx, sy, cz, (x, y, z) -> shape.isAir(x, y, z) ? 0 : 1));
+    }
+
+    private static WorldSnapshot box(int min, int max) {
+        return world(2, 2, (x, y, z) -> x >= min && x <= max && y >= min && y <= max && z >= min && z <= max);
+    }
+
+    @Test
+    void countsConnectedAirOnly() {
+        // Two boxes of air split by a stone wall at x = 10
+        WorldSnapshot world = world(1, 1, (x, y, z) -> x != 10 && x > 0 && x < 15 && y > 0 && y < 15 && z > 0 && z < 15);
+        FloodFill fill = new FloodFill();
+        fill.setBounds(0, 0, 0, 15, 15, 15);
+        assertEquals(9 * 14 * 14, fill.countConnectedAir(world, 1, 1, 1, Integer.MAX_VALUE));
+        assertEquals(4 * 14 * 14, fill.countConnectedAir(world, 14, 14, 14, Integer.MAX_VALUE));
+        assertEquals(0, fill.countConnectedAir(world, 10, 5, 5, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void stopsAtNodeLimit() {
+        WorldSnapshot world = box(1, 30);
+        FloodFill fill = new FloodFill();
+        fill.setBounds(0, 0, 0, 31, 31, 31);
+        assertEquals(1000, fill.countConnectedAir(world, 5, 5, 5, 1000));
+        // Nothing stays visited between fills unless retaining
+        assertEquals(1000, fill.countConnectedAir(world, 5, 5, 5, 1000));
+        assertFalse(fill.isVisited(5, 5, 5));
+    }
+
+    @Test
+    void stopsAtBoundsAndSphere() {
+        WorldSnapshot world = box(0, 31);
+        FloodFill fill = new FloodFill();
+        fill.setBounds(4, 4, 4, 7, 7, 7);
+        assertEquals(64, fill.countConnectedAir(world, 5, 5, 5, Integer.MAX_VALUE));
+        assertEquals(0, fill.countConnectedAir(world, 20, 5, 5, Integer.MAX_VALUE));
+
+        fill.setSphere(16, 16, 16, 5);
+        int expected = 0;
+        for (int x = -5; x <= 5; x++) {
+            for (int y = -5; y <= 5; y++) {
+                for (int z = -5; z <= 5; z++) {
+                    if (x * x + y * y + z * z <= 25) expected++;
+                }
+            }
+        }
+        assertEquals(expected, fill.countConnectedAir(world, 16, 16, 16, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void visitsEveryNodeOnceWhenTheQueueWraps() {
+        // A serpentine tunnel keeps the queue short while thousands of nodes pass through it, so the ring
+        // buffer wraps many times; the open box after it makes the queue grow while wrapped
+        WorldSnapshot world = world(2, 2, (x, y, z) -> {
+            if (y >= 20 && y <= 30 && x >= 1 && x <= 30 && z >= 1 && z <= 30) return true;
+            if (y == 19) return x == 1 && z == 1;
+            if (y > 19 || y < 1 || z < 1 || z > 30 || x < 1 || x > 30) return false;
+            // Rows along x on every odd z, joined at alternating ends, on every layer
+            if (z % 2 == 1) return true;
+            return (z / 2 + y) % 2 == 0 ? x == 30 : x == 1;
+        });
+        FloodFill fill = new FloodFill();
+        fill.setBounds(0, 0, 0, 31, 31, 31);
+
+        LongOpenHashSet seen = new LongOpenHashSet();
+        int[] visits = {0};
+        int count = fill.fill(world, 1, 1, 1, Integer.MAX_VALUE, (x, y, z) -> {
+            visits[0]++;
+            assertTrue(seen.add(PackedPos.pack(x, y, z)), "visited twice: " + x + "," + y + "," + z);
+        });
+
+        int expected = 0;
+        for (int x = 0; x < 32; x++) {
+            for (int y = 0; y < 32; y++) {
+                for (int z = 0; z < 32; z++) {
+                    if (world.isAir(x, y, z)) expected++;
+                }
+            }
+        }
+        assertTrue(expected > 8192);
+        assertEquals(expected, count);
+        assertEquals(expected, visits[0]);
+    }
+
+    @Test
+    void retainingFillsNeverCoverABlockTwice() {
+        WorldSnapshot world = box(1, 20);
+        FloodFill fill = new FloodFill();
+        fill.setBounds(0, 0, 0, 31, 31, 31);
+        fill.beginRetaining();
+
+        int[] frontier = {0};
+        assertEquals(500, fill.fill(world, 10, 10, 10, 500, new FloodFill.NodeVisitor() {
+            @Override
+            public void visit(int x, int y, int z) {
+            }
+
+            @Override
+            public void frontier(int x, int y, int z) {
+                frontier[0]++;
+            }
+        }));
+        assertFalse(fill.reachedTruncated());
+        assertEquals(0, fill.countConnectedAir(world, 10, 10, 10, 500));
+
+        // The rest of the box is flooded from elsewhere and runs into what the first fill left queued, which
+        // stays visited without being counted by either fill
+        int rest = fill.countConnectedAir(world, 1, 1, 1, Integer.MAX_VALUE);
+        assertTrue(fill.reachedTruncated());
+        assertEquals(20 * 20 * 20 - 500 - frontier[0], rest);
+
+        fill.endRetaining();
+        assertFalse(fill.isVisited(10, 10, 10));
+        assertEquals(20 * 20 * 20, fill.countConnectedAir(world, 10, 10, 10, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void reportsQueuedNodesWhenStoppingAtTheLimit() {
+        WorldSnapshot world = box(1, 20);
+        FloodFill fill = new FloodFill();
+        fill.setBounds(0, 0, 0, 31, 31, 31);
+        fill.beginRetaining();
+
+        int[] visits = {0}, frontier = {0};
+        int count = fill.fill(world, 10, 10, 10, 100, new FloodFill.NodeVisitor() {
+            @Override
+            public void visit(int x, int y, int z) {
+                visits[0]++;
+            }
+
+            @Override
+            public void frontier(int x, int y, int z) {
+                frontier[0]++;
+            }
+        });
+        assertEquals(100, count);
+        assertTrue(frontier[0] > 0);
+        assertEquals(count + frontier[0], visits[0]);
+    }
+}
@@ -0,0 +1,115 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OreKernelsTest {
+    private static final int STONE = 1, ORE = 2;
+    private static final int[] IDS = {0, STONE, ORE};
+    private static final byte[] FLAGS = {TestWorlds.AIR, 0, 0};
+
+    // 3x3x3 sections of air, stone and ore at random; sections on the outer shell are left out when sparse
+    private static WorldSnapshot randomWorld(Random random, double airShare, boolean sparse) {
+        return TestWorlds.world(3, 3, (cx, sy, cz) -> {
+            boolean inner = cx == 1 && sy == 1 && cz == 1;
+            if (sparse && !inner && random.nextBoolean()) return null;
+            return TestWorlds.section(IDS, FLAGS, cx, sy, cz,
+                (x, y, z) -> random.nextDouble() < airShare ? 0 : random.nextInt(4) == 0 ? ORE : STONE);
+        });
+    }
+
+    private static void assertMatchesPerBlock(WorldSnapshot world, int sx, int sy, int sz) {
+        SectionSnapshot section = world.getSection(sx, sy, sz);
+        BitSet ore = new BitSet();
+        ore.set(ORE);
+        long[] ores = section.mask(ore);
+        long[] copy = ores.clone();
+
+        long[] exposed = OreKernels.exposedMask(world, sx, sy, sz, ores);
+        for (int i = 0; i < SectionSnapshot.VOLUME; i++) {
+            int x = sx << 4 | (i & 15), y = sy << 4 | (i >> 8), z = sz << 4 | (i >> 4 & 15);
+            boolean expected = (ores[i >> 6] & 1L << i) != 0 && OreKernels.isExposed(world, x, y, z);
+            assertEquals(expected, (exposed[i >> 6] & 1L << i) != 0, "block " + x + "," + y + "," + z);
+        }
+        assertEquals(Arrays.toString(copy), Arrays.toString(ores), "ores mask was modified");
+    }
+
+    @Test
+    void exposedMaskMatchesPerBlockCheck() {
+        Random random = new Random(1);
+        for (double airShare : new double[] {0.02, 0.3, 0.8}) {
+            WorldSnapshot world = randomWorld(random, airShare, false);
+            assertMatchesPerBlock(world, 1, 1, 1);
+        }
+    }
+
+    @Test
+    void exposedMaskTreatsMissingNeighboursAsNotAir() {
+        Random random = new Random(2);
+        for (int i = 0; i < 10; i++) {
+            WorldSnapshot world = randomWorld(random, 0.3, true);
+            assertMatchesPerBlock(world, 1, 1, 1);
+            // Corner sections miss most of their neighbours
+            if (world.getSection(0, 0, 0) != null) assertMatchesPerBlock(world, 0, 0, 0);
+        }
+    }
+
+    @Test
+    void forEachExposedReportsExposedOresInsideTheBox() {
+        Random random = new Random(4);
+        WorldSnapshot world = randomWorld(random, 0.3, false);
+        SectionSnapshot section = world.getSection(1, 1, 1);
+        BitSet ore = new BitSet();
+        ore.set(ORE);
+
+        LongOpenHashSet reported = new LongOpenHashSet();
+        OreKernels.forEachExposed(world, section, 1, 1, 1, ore, 20, 18, 16, 27, 31, 24, (x, y, z, stateId) -> {
+            assertEquals(ORE, stateId);
+            reported.add(PackedPos.pack(x, y, z));
+        });
+
+        LongOpenHashSet expected = new LongOpenHashSet();
+        for (int x = 20; x <= 27; x++) {
+            for (int y = 18; y <= 31; y++) {
+                for (int z = 16; z <= 24; z++) {
+                    if (world.getStateId(x, y, z) == ORE && OreKernels.isExposed(world, x, y, z)) expected.add(PackedPos.pack(x, y, z));
+                }
+            }
+        }
+        assertEquals(expected, reported);
+    }
+
+    @Test
+    void exposedFacesCountsAirNeighbours() {
+        Random random = new Random(3);
+        WorldSnapshot world = randomWorld(random, 0.5, false);
+        for (int i = 0; i < 1000; i++) {
+            int x = 1 + random.nextInt(46), y = 1 + random.nextInt(46), z = 1 + random.nextInt(46);
+            int expected = 0;
+            for (int[] d : new int[][] {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}}) {
+                if (world.isAir(x + d[0], y + d[1], z + d[2])) expected++;
+            }
+            assertEquals(expected, OreKernels.exposedFaces(world, x, y, z));
+            assertEquals(expected > 0, OreKernels.isExposed(world, x, y, z));
+        }
+    }
+
+    @Test
+    void findVeinVisitsEachBlockOnce() {
+        // A diagonal line of five ores, connected only through corners
+        WorldSnapshot world = TestWorlds.single(TestWorlds.section(IDS, FLAGS, 0, 0, 0,
+            (x, y, z) -> x == y && y == z && x < 5 ? ORE : STONE));
+
+        LongOpenHashSet found = new LongOpenHashSet();
+        found.add(PackedPos.pack(0, 0, 0));
+        int added = OreKernels.findVein(world, 0, 0, 0, id -> id == ORE, (x, y, z) -> found.add(PackedPos.pack(x, y, z)));
+        assertEquals(4, added);
+        assertEquals(5, found.size());
+    }
+}
@@ -0,0 +1,95 @@
+package com.koolname.bigcaves.scan;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SectionSnapshotTest {
+    // Palette entry 0 is air, the others solid; about airShare of the blocks are air
+    private static SectionSnapshot randomSection(Random random, int paletteSize, double airShare) {
+        int[] ids = new int[paletteSize];
+        byte[] flags = new byte[paletteSize];
+        for (int i = 0; i < paletteSize; i++) ids[i] = i;
+        flags[0] = TestWorlds.AIR;
+
+        short[] indices = new short[SectionSnapshot.VOLUME];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (short) (random.nextDouble() < airShare ? 0 : 1 + random.nextInt(paletteSize - 1));
+        }
+        return SectionSnapshot.of(ids, flags, paletteSize, indices);
+    }
+
+    private static int naiveAir(SectionSnapshot section, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int air = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int x = minX; x <= maxX; x++) {
+                    if (section.isAir(SectionSnapshot.index(x, y, z))) air++;
+                }
+            }
+        }
+        return air;
+    }
+
+    private static void assertBoxes(Random random, SectionSnapshot section) {
+        assertEquals(naiveAir(section, 0, 0, 0, 15, 15, 15), section.airCount(0, 0, 0, 15, 15, 15));
+        for (int i = 0; i < 500; i++) {
+            int minX = random.nextInt(16), minY = random.nextInt(16), minZ = random.nextInt(16);
+            int maxX = minX + random.nextInt(16 - minX), maxY = minY + random.nextInt(16 - minY), maxZ = minZ + random.nextInt(16 - minZ);
+            assertEquals(naiveAir(section, minX, minY, minZ, maxX, maxY, maxZ), section.airCount(minX, minY, minZ, maxX, maxY, maxZ),
+                () -> "box " + minX + "," + minY + "," + minZ + " to " + maxX + "," + maxY + "," + maxZ);
+        }
+    }
+
+    @Test
+    void prefixSumsMatchNaiveCount() {
+        Random random = new Random(1);
+        for (double airShare : new double[] {0.05, 0.5, 0.95}) assertBoxes(random, randomSection(random, 4, airShare));
+    }
+
+    @Test
+    void prefixSumsMatchNaiveCountWithWidePalette() {
+        Random random = new Random(2);
+        SectionSnapshot section = randomSection(random, 300, 0.4);
+        assertEquals(300, section.paletteSize());
+        assertBoxes(random, section);
+    }
+
+    @Test
+    void uniformSectionsAnswerWithoutTable() {
+        SectionSnapshot stone = SectionSnapshot.uniform(1, (byte) 0);
+        assertEquals(0, stone.airCount(0, 0, 0, 15, 15, 15));
+        assertEquals(2 * 3 * 4, SectionSnapshot.EMPTY.airCount(1, 2, 3, 2, 4, 6));
+        assertEquals(SectionSnapshot.VOLUME, SectionSnapshot.EMPTY.airCount());
+    }
+
+    @Test
+    void volumeCountMatchesNaiveCountAcrossSections() {
+        Random random = new Random(3);
+        WorldSnapshot world = TestWorlds.world(3, 3, (cx, sy, cz) -> randomSection(random, 3, random.nextDouble()));
+
+        for (int i = 0; i < 200; i++) {
+            int size = 1 + random.nextInt(24);
+            int x0 = random.nextInt(48 - size), y0 = random.nextInt(48 - size), z0 = random.nextInt(48 - size);
+            int expected = 0;
+            for (int y = y0; y < y0 + size; y++) {
+                for (int z = z0; z < z0 + size; z++) {
+                    for (int x = x0; x < x0 + size; x++) {
+                        if (world.isAir(x, y, z)) expected++;
+                    }
+                }
+            }
+            assertEquals(expected, AirKernels.countAir(world, x0, y0, z0, size, 0));
+        }
+    }
+
+    @Test
+    void blocksOutsideTheSnapshotAreNotAir() {
+        WorldSnapshot world = TestWorlds.single(SectionSnapshot.EMPTY);
+
+        // Half of the volume hangs over the edge of the only chunk
+        assertEquals(8 * 16 * 16, AirKernels.countAir(world, 8, 0, 0, 16, 0));
+    }
+}
@@ -0,0 +1,50 @@
+package com.koolname.bigcaves.scan;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * Snapshots for the scan tests. Worlds span chunks 0 to size - 1 on x and z and sections 0 to height - 1;
+ * the tests only say what goes into each section or block.
+ */
+final class TestWorlds {
+    static final byte AIR = SectionSnapshot.FLAG_AIR | SectionSnapshot.FLAG_PASSABLE | SectionSnapshot.FLAG_SKYLIGHT;
+
+    interface SectionRule {
+        /** The section at the given section coordinates, or {@code null} to leave it out. */
+        SectionSnapshot section(int chunkX, int sectionY, int chunkZ);
+    }
+
+    interface BlockRule {
+        /** Palette index of the block at the given world coordinates. */
+        int index(int x, int y, int z);
+    }
+
+    private TestWorlds() {
+    }
+
+    static WorldSnapshot world(int size, int height, SectionRule rule) {
+        Long2ObjectOpenHashMap<ChunkSnapshot> chunks = new Long2ObjectOpenHashMap<>();
+        for (int cx = 0; cx < size; cx++) {
+            for (int cz = 0; cz < size; cz++) {
+                SectionSnapshot[] sections = new SectionSnapshot[height];
+                for (int sy = 0; sy < height; sy++) sections[sy] = rule.section(cx, sy, cz);
+                chunks.put(ChunkSnapshot.key(cx, cz), new ChunkSnapshot(cx, cz, 0, sections));
+            }
+        }
+        return new WorldSnapshot(chunks);
+    }
+
+    /** Chunk 0, 0 holding only {@code section} at section y 0. */
+    static WorldSnapshot single(SectionSnapshot section) {
+        return world(1, 1, (cx, sy, cz) -> section);
+    }
+
+    /** The section at the given section coordinates over the palette {@code ids}, {@code flags}, block by block in index order. */
+    static SectionSnapshot section(int[] ids, byte[] flags, int chunkX, int sectionY, int chunkZ, BlockRule rule) {
+        short[] indices = new short[SectionSnapshot.VOLUME];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (short) rule.index(chunkX << 4 | (i & 15), sectionY << 4 | (i >> 8), chunkZ << 4 | (i >> 4 & 15));
+        }
+        return SectionSnapshot.of(ids, flags, ids.length, indices);
+    }
+}
@@ -0,0 +1,123 @@
+package com.koolname.bigcaves.scan;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VolumeCacheTest {
+    @Test
+    void entriesExpireAfterTheTimeToLive() {
+        VolumeCache cache = new VolumeCache(1024, 100);
+        cache.put(16, 32, 48, 1000);
+        assertTrue(cache.isFresh(16, 32, 48, 1099));
+        assertEquals(1, cache.size());
+
+        // An expired lookup drops the entry
+        assertFalse(cache.isFresh(16, 32, 48, 1100));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // Putting again refreshes it
+        cache.put(16, 32, 48, 1100);
+        cache.put(16, 32, 48, 1150);
+        assertTrue(cache.isFresh(16, 32, 48, 1200));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void timeZeroIsStillAnEntry() {
+        VolumeCache cache = new VolumeCache(1024, 100);
+        cache.put(0, 0, 0, 0);
+        assertTrue(cache.isFresh(0, 0, 0, 0));
+    }
+
+    @Test
+    void sizeStaysBoundedWhenFull() {
+        VolumeCache cache = new VolumeCache(256, 1_000_000);
+        for (int i = 0; i < 10_000; i++) cache.put(i * 16, 0, 0, 1);
+        int full = cache.size();
+        assertTrue(full < 10_000);
+
+        for (int i = 10_000; i < 20_000; i++) cache.put(i * 16, 0, 0, 1);
+        assertEquals(full, cache.size());
+    }
+
+    @Test
+    void clockKeepsEntriesThatAreLookedUp() {
+        VolumeCache cache = new VolumeCache(256, 1_000_000);
+        int hot = 32, inserts = 5_000;
+        for (int i = 0; i < hot; i++) cache.put(i * 16, 64, 0, 1);
+
+        // A hot entry only goes when the hand finds every entry of its segment referenced, like right after
+        // the segment filled up with new puts
+        int hotMisses = 0;
+        for (int i = 0; i < inserts; i++) {
+            cache.put(i * 16, 0, 0, 1);
+            for (int j = 0; j < hot; j++) {
+                if (cache.isFresh(j * 16, 64, 0, 1)) continue;
+                hotMisses++;
+                cache.put(j * 16, 64, 0, 1);
+            }
+        }
+        assertTrue(hotMisses < hot, hotMisses + " hot misses");
+
+        int coldKept = 0;
+        for (int i = inserts - 1000; i < inserts; i++) {
+            if (cache.isFresh(i * 16, 0, 0, 1)) coldKept++;
+        }
+        assertTrue(coldKept < 500, coldKept + " of the last 1000 cold entries kept");
+    }
+
+    @Test
+    void clockDropsExpiredEntriesFirst() {
+        VolumeCache cache = new VolumeCache(256, 100);
+        for (int i = 0; i < 10_000; i++) cache.put(i * 16, 0, 0, 1);
+        int full = cache.size();
+
+        // Far fewer new entries than any segment holds; each one takes the place of an expired entry
+        int added = full / 4;
+        for (int i = 0; i < added; i++) cache.put(i * 16, 128, 0, 1000);
+        for (int i = 0; i < added; i++) assertTrue(cache.isFresh(i * 16, 128, 0, 1000), "new entry " + i);
+        assertEquals(full, cache.size());
+    }
+
+    @Test
+    void removalKeepsProbeRunsIntact() {
+        VolumeCache cache = new VolumeCache(1 << 16, 1_000_000);
+        int count = 20_000;
+        for (int i = 0; i < count; i++) cache.put(i * 16, (i % 7) * 16, (i / 7) * 16, 1);
+        assertEquals(count, cache.size());
+
+        Random random = new Random(1);
+        boolean[] removed = new boolean[count];
+        int left = count;
+        for (int i = 0; i < count; i++) {
+            if (!random.nextBoolean()) continue;
+            cache.invalidate(i * 16, (i % 7) * 16, (i / 7) * 16);
+            removed[i] = true;
+            left--;
+        }
+        assertEquals(left, cache.size());
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(!removed[i], cache.isFresh(i * 16, (i % 7) * 16, (i / 7) * 16, 2), "entry " + i);
+        }
+    }
+
+    @Test
+    void clearDropsEverythingButKeepsCounts() {
+        VolumeCache cache = new VolumeCache(1024, 100);
+        cache.put(0, 0, 0, 1);
+        assertTrue(cache.isFresh(0, 0, 0, 1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.isFresh(0, 0, 0, 1));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+}
@@ -0,0 +1,160 @@
+package com.koolname.bigcaves.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionFileTest {
+    @TempDir
+    Path dir;
+
+    private static byte[] record(int seed, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = (byte) (seed * 31 + i);
+        return bytes;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void recordsSurviveReopening() throws IOException {
+        Path path = dir.resolve("r.0.0.bin");
+        try (RegionFile file = new RegionFile(path)) {
+            assertNull(file.read(3, 4));
+            file.write(3, 4, ByteBuffer.wrap(record(1, 100)));
+            file.write(31, 31, ByteBuffer.wrap(record(2, 7)));
+            assertArrayEquals(record(1, 100), bytes(file.read(3, 4)));
+        }
+
+        try (RegionFile file = new RegionFile(path)) {
+            assertArrayEquals(record(1, 100), bytes(file.read(3, 4)));
+            // Chunk coordinates are taken within the region
+            assertArrayEquals(record(2, 7), bytes(file.read(-1, 63)));
+            assertNull(file.read(0, 0));
+        }
+    }
+
+    @Test
+    void writeUsesOnlyTheRemainingBytes() throws IOException {
+        try (RegionFile file = new RegionFile(dir.resolve("r.bin"))) {
+            ByteBuffer buffer = ByteBuffer.wrap(record(1, 50));
+            buffer.position(10).limit(30);
+            file.write(0, 0, buffer);
+            assertArrayEquals(Arrays.copyOfRange(record(1, 50), 10, 30), bytes(file.read(0, 0)));
+        }
+    }
+
+    @Test
+    void recordsAreRewrittenInPlaceOrMoved() throws IOException {
+        try (RegionFile file = new RegionFile(dir.resolve("r.bin"))) {
+            file.write(0, 0, ByteBuffer.wrap(record(1, 100)));
+            file.write(1, 0, ByteBuffer.wrap(record(2, 100)));
+
+            // Smaller fits in place, larger moves to the end; the neighbour is untouched either way
+            file.write(0, 0, ByteBuffer.wrap(record(3, 40)));
+            assertArrayEquals(record(3, 40), bytes(file.read(0, 0)));
+            file.write(0, 0, ByteBuffer.wrap(record(4, 300)));
+            assertArrayEquals(record(4, 300), bytes(file.read(0, 0)));
+            assertArrayEquals(record(2, 100), bytes(file.read(1, 0)));
+        }
+    }
+
+    @Test
+    void fileGrowsPastTheFirstMapping() throws IOException {
+        Path path = dir.resolve("r.bin");
+        try (RegionFile file = new RegionFile(path)) {
+            for (int slot = 0; slot < 32 * 32; slot++) file.write(slot % 32, slot / 32, ByteBuffer.wrap(record(slot, 200 + slot)));
+        }
+        assertTrue(Files.size(path) > 1024 * 200);
+
+        try (RegionFile file = new RegionFile(path)) {
+            for (int slot = 0; slot < 32 * 32; slot++) assertArrayEquals(record(slot, 200 + slot), bytes(file.read(slot % 32, slot / 32)));
+        }
+    }
+
+    @Test
+    void deadSpaceIsCompactedOnOpen() throws IOException {
+        Path path = dir.resolve("r.bin");
+        try (RegionFile file = new RegionFile(path)) {
+            // Every write is larger than the last, so each one leaves the previous copy behind
+            for (int i = 1; i <= 100; i++) file.write(5, 5, ByteBuffer.wrap(record(i, i * 100)));
+            file.write(6, 5, ByteBuffer.wrap(record(0, 10)));
+        }
+        long size = Files.size(path);
+
+        try (RegionFile file = new RegionFile(path)) {
+            assertArrayEquals(record(100, 10_000), bytes(file.read(5, 5)));
+            assertArrayEquals(record(0, 10), bytes(file.read(6, 5)));
+            // Compacted records start over at the front, so the file takes new ones without growing
+            for (int slot = 0; slot < 32; slot++) file.write(slot, 10, ByteBuffer.wrap(record(slot, 5_000)));
+        }
+        assertEquals(size, Files.size(path));
+
+        try (RegionFile file = new RegionFile(path)) {
+            assertArrayEquals(record(100, 10_000), bytes(file.read(5, 5)));
+            for (int slot = 0; slot < 32; slot++) assertArrayEquals(record(slot, 5_000), bytes(file.read(slot, 10)));
+        }
+    }
+
+    @Test
+    void foreignOrCorruptHeaderStartsEmpty() throws IOException {
+        Path path = dir.resolve("r.bin");
+        try (RegionFile file = new RegionFile(path)) {
+            file.write(1, 1, ByteBuffer.wrap(record(1, 100)));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), 0);
+        }
+
+        try (RegionFile file = new RegionFile(path)) {
+            assertNull(file.read(1, 1));
+            file.write(1, 1, ByteBuffer.wrap(record(2, 10)));
+            assertArrayEquals(record(2, 10), bytes(file.read(1, 1)));
+        }
+    }
+
+    @Test
+    void truncatedFileStartsEmpty() throws IOException {
+        Path path = dir.resolve("r.bin");
+        Files.write(path, new byte[] {0x42, 0x43});
+        try (RegionFile file = new RegionFile(path)) {
+            assertNull(file.read(0, 0));
+            file.write(0, 0, ByteBuffer.wrap(record(1, 10)));
+            assertArrayEquals(record(1, 10), bytes(file.read(0, 0)));
+        }
+    }
+
+    @Test
+    void tableEntriesPointingOutsideTheFileAreIgnored() throws IOException {
+        Path path = dir.resolve("r.bin");
+        try (RegionFile file = new RegionFile(path)) {
+            file.write(2, 0, ByteBuffer.wrap(record(1, 10)));
+            file.write(3, 0, ByteBuffer.wrap(record(2, 10)));
+        }
+        // Table entry of chunk (2, 0): offset and length
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE - 4).putInt(10).flip(), 8 + 2 * 8);
+        }
+
+        try (RegionFile file = new RegionFile(path)) {
+            assertNull(file.read(2, 0));
+            assertArrayEquals(record(2, 10), bytes(file.read(3, 0)));
+        }
+    }
+}